@@ -31,8 +31,14 @@ const store = createStore({
             }
         },
         logout({ commit }) {
+            const bearerToken = localStorage.getItem('bearerToken');
             localStorage.removeItem('bearerToken');
             commit('clearUser');
+            if (bearerToken) {
+                return axios.post(`${import.meta.env.VITE_USER_API_URL}/api/users/logout`, null, {
+                    headers: { 'Authorization': `Bearer ${bearerToken}` }
+                }).catch(() => {});
+            }
         }
     },
     getters: {
@@ -0,0 +1,168 @@
+package org.froome.gatewayservice;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Verifies the bearer token once at the edge and forwards the authenticated principal to the
+ * services as {@code X-User-Id}/{@code X-Is-Admin} headers. The headers are signed with a secret
+ * shared with the services, over the digest of the token they describe, so that a service in
+ * trusted mode can accept them without verifying the JWT again.
+ */
+@Component
+@Slf4j
+public class JwtAuthenticationGatewayFilterFactory extends AbstractGatewayFilterFactory<JwtAuthenticationGatewayFilterFactory.Config> {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+    public static final String IS_ADMIN_HEADER = "X-Is-Admin";
+    public static final String TOKEN_EXPIRATION_HEADER = "X-Token-Expiration";
+    public static final String SIGNATURE_HEADER = "X-Principal-Signature";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final JwtParser parser;
+    private final SecretKeySpec principalKey;
+
+    public JwtAuthenticationGatewayFilterFactory(@Value("${jwt.secret}") String secret,
+                                                 @Value("${gateway.principal.secret}") String principalSecret) {
+        super(Config.class);
+        SecretKeySpec signingKey = new SecretKeySpec(Base64.getDecoder().decode(secret), SignatureAlgorithm.HS512.getJcaName());
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.principalKey = new SecretKeySpec(Base64.getDecoder().decode(principalSecret), HMAC_ALGORITHM);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String method = request.getMethod().name();
+            String path = request.getPath().value();
+            boolean adminRoute = matches(config.getAdminRoutes(), method, path);
+            boolean publicRoute = matches(config.getPublicRoutes(), method, path);
+
+            ServerHttpRequest.Builder forwarded = request.mutate().headers(headers -> {
+                headers.remove(USER_ID_HEADER);
+                headers.remove(IS_ADMIN_HEADER);
+                headers.remove(TOKEN_EXPIRATION_HEADER);
+                headers.remove(SIGNATURE_HEADER);
+            });
+
+            String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                if (adminRoute) {
+                    return reject(exchange, HttpStatus.UNAUTHORIZED);
+                }
+                return chain.filter(exchange.mutate().request(forwarded.build()).build());
+            }
+
+            String token = authHeader.substring(7);
+            Claims claims;
+            try {
+                claims = parser.parseClaimsJws(token).getBody();
+            } catch (JwtException | IllegalArgumentException e) {
+                if (publicRoute && !adminRoute) {
+                    // Anonymous access is allowed here, so a stale token is dropped rather than rejected.
+                    forwarded.headers(headers -> headers.remove(HttpHeaders.AUTHORIZATION));
+                    return chain.filter(exchange.mutate().request(forwarded.build()).build());
+                }
+                log.debug("Rejected invalid token on {} {}: {}", method, path, e.getMessage());
+                return reject(exchange, HttpStatus.UNAUTHORIZED);
+            }
+
+            boolean isAdmin = Boolean.TRUE.equals(claims.get("isAdmin", Boolean.class));
+            if (adminRoute && !isAdmin) {
+                return reject(exchange, HttpStatus.FORBIDDEN);
+            }
+            if (claims.get("id") == null || claims.getExpiration() == null) {
+                return reject(exchange, HttpStatus.UNAUTHORIZED);
+            }
+
+            String userId = claims.get("id").toString();
+            String expiration = String.valueOf(claims.getExpiration().getTime());
+            String signature = sign(digest(token), userId, String.valueOf(isAdmin), expiration);
+            forwarded.headers(headers -> {
+                headers.set(USER_ID_HEADER, userId);
+                headers.set(IS_ADMIN_HEADER, String.valueOf(isAdmin));
+                headers.set(TOKEN_EXPIRATION_HEADER, expiration);
+                headers.set(SIGNATURE_HEADER, signature);
+            });
+            return chain.filter(exchange.mutate().request(forwarded.build()).build());
+        };
+    }
+
+    private static boolean matches(List<String> routes, String method, String path) {
+        for (String route : routes) {
+            int separator = route.indexOf(' ');
+            if (separator > 0
+                    && route.substring(0, separator).equalsIgnoreCase(method)
+                    && PATH_MATCHER.match(route.substring(separator + 1).trim(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, HttpStatus status) {
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+
+    private String sign(String tokenDigest, String userId, String isAdmin, String expiration) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(principalKey);
+            byte[] payload = String.join("|", tokenDigest, userId, isAdmin, expiration).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(payload));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign the principal headers", e);
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Data
+    public static class Config {
+        /**
+         * Routes, as {@code "METHOD /path/pattern"}, that only admins may call.
+         */
+        private List<String> adminRoutes = new ArrayList<>();
+
+        /**
+         * Routes, as {@code "METHOD /path/pattern"}, that accept anonymous calls; an invalid token is dropped there instead of rejected.
+         */
+        private List<String> publicRoutes = new ArrayList<>();
+    }
+}
@@ -8,7 +8,9 @@ CREATE TABLE IF NOT EXISTS users (
                                      password VARCHAR(255) NOT NULL,
                                      email VARCHAR(255) NOT NULL,
                                      address VARCHAR(255) NOT NULL,
-                                     is_admin BOOLEAN NOT NULL
+                                     is_admin BOOLEAN NOT NULL,
+                                     CONSTRAINT uk_users_email UNIQUE (email),
+                                     CONSTRAINT uk_users_username UNIQUE (username)
 );
 
 CREATE TABLE IF NOT EXISTS products (
@@ -16,7 +18,10 @@ CREATE TABLE IF NOT EXISTS products (
                                         name VARCHAR(255) NOT NULL,
                                         description VARCHAR(255),
                                         price DECIMAL(10, 2) NOT NULL,
-                                        stock INT NOT NULL
+                                        stock INT NOT NULL,
+                                        updated_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+                                        INDEX idx_products_price_id (price, id),
+                                        INDEX idx_products_updated_at (updated_at)
 );
 
 CREATE TABLE IF NOT EXISTS orders (
@@ -24,7 +29,9 @@ CREATE TABLE IF NOT EXISTS orders (
                                       user_id BIGINT NOT NULL,
                                       order_date DATETIME(6) NOT NULL,
                                       status VARCHAR(255) NOT NULL,
-                                      CONSTRAINT fk_user_order FOREIGN KEY (user_id) REFERENCES users(id)
+                                      CONSTRAINT fk_user_order FOREIGN KEY (user_id) REFERENCES users(id),
+                                      INDEX idx_orders_user_id_order_date_id (user_id, order_date, id),
+                                      INDEX idx_orders_order_date_id (order_date, id)
 );
 
 CREATE TABLE IF NOT EXISTS order_items (
@@ -44,3 +51,46 @@ CREATE TABLE IF NOT EXISTS payments (
                                         amount DECIMAL(10, 2) NOT NULL,
                                         CONSTRAINT fk_order_payment FOREIGN KEY (order_id) REFERENCES orders(id)
 );
+
+CREATE TABLE IF NOT EXISTS revoked_tokens (
+                                              id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                              token_digest CHAR(64) UNIQUE,
+                                              user_id BIGINT NOT NULL,
+                                              expires_at DATETIME(6) NOT NULL,
+                                              created_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+                                              INDEX idx_revoked_tokens_expires_at (expires_at),
+                                              INDEX idx_revoked_tokens_created_at (created_at)
+);
+
+CREATE TABLE IF NOT EXISTS product_views (
+                                             product_id BIGINT PRIMARY KEY,
+                                             views BIGINT NOT NULL,
+                                             INDEX idx_product_views_views (views)
+);
+
+CREATE TABLE IF NOT EXISTS inventory_checkpoints (
+                                                     ledger VARCHAR(64) PRIMARY KEY,
+                                                     epoch BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stock_reservations (
+                                                  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                                  order_item_id BIGINT NOT NULL UNIQUE,
+                                                  order_id BIGINT NOT NULL,
+                                                  product_id BIGINT NOT NULL,
+                                                  quantity INT NOT NULL,
+                                                  expires_at DATETIME(6) NOT NULL,
+                                                  INDEX idx_stock_reservations_expires_at (expires_at),
+                                                  INDEX idx_stock_reservations_order_id (order_id)
+);
+
+CREATE TABLE IF NOT EXISTS order_summaries (
+                                                   order_id BIGINT PRIMARY KEY,
+                                                   user_id BIGINT NOT NULL,
+                                                   order_date DATETIME(6) NOT NULL,
+                                                   status VARCHAR(255) NOT NULL,
+                                                   item_count INT NOT NULL,
+                                                   total DECIMAL(12, 2) NOT NULL,
+                                                   updated_at DATETIME(6) NOT NULL,
+                                                   INDEX idx_order_summaries_user_id_order_date_order_id (user_id, order_date, order_id)
+);
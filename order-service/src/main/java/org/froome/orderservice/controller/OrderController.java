@@ -1,10 +1,15 @@
 package org.froome.orderservice.controller;
 
+import org.froome.orderservice.config.UserPrincipal;
+import org.froome.orderservice.exception.BadRequestException;
 import org.froome.orderservice.exception.ForbiddenException;
 import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.dto.CursorPage;
 import org.froome.orderservice.model.dto.ExceptionDto;
 import org.froome.orderservice.model.dto.OrderDto;
+import org.froome.orderservice.model.dto.OrderSummaryDto;
 import org.froome.orderservice.service.AuthService;
+import org.froome.orderservice.service.OrderExportService;
 import org.froome.orderservice.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -15,12 +20,16 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -31,6 +40,7 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderExportService orderExportService;
     private final AuthService authService;
 
     @PostMapping
@@ -45,33 +55,30 @@ public class OrderController {
     )
     public ResponseEntity<OrderDto> create(
             @Valid @RequestBody OrderDto orderDto,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        long userId = authService.getUserIdFromToken(token);
-        OrderDto createdOrder = orderService.createOrder(orderDto, userId);
+            UserPrincipal principal) {
+        OrderDto createdOrder = orderService.createOrder(orderDto, principal.getId());
         return new ResponseEntity<>(createdOrder, HttpStatus.CREATED);
     }
 
     @GetMapping
     @Operation(
             summary = "Get all orders",
-            description = "Only admins can get all orders.",
+            description = "Only admins can get all orders, as summaries with their item count and total.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Orders found"),
                     @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<List<OrderDto>> getAll(
+    public ResponseEntity<List<OrderSummaryDto>> getAll(
             @RequestParam(required = false, name = "page", defaultValue = "0") Integer page,
             @RequestParam(required = false, name = "size", defaultValue = "10") Integer size,
-            Authentication authentication
+            UserPrincipal principal
     ) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to view all orders.");
         }
-        List<OrderDto> orders = orderService.getAllOrders(page, size);
+        List<OrderSummaryDto> orders = orderService.getAllOrders(page, size);
         return new ResponseEntity<>(orders, HttpStatus.OK);
     }
 
@@ -89,10 +96,9 @@ public class OrderController {
     public ResponseEntity<OrderDto> get(
             @Parameter(description = "ID of the order to be retrieved", required = true)
             @PathVariable long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
+            UserPrincipal principal) {
         OrderDto order = orderService.getOrderById(id);
-        if (authService.isNotAdmin(token) && authService.isNotUserAssociatedWithOrder(token, order)) {
+        if (authService.isNotAdmin(principal) && authService.isNotUserAssociatedWithOrder(principal, order)) {
             throw new ForbiddenException("You are not allowed to view this order.");
         }
         return new ResponseEntity<>(order, HttpStatus.OK);
@@ -100,24 +106,80 @@ public class OrderController {
 
     @GetMapping("/mine")
     @Operation(
-            summary = "Get orders by user ID",
-            description = "Get all orders associated with a user ID. Admins and the user can access.",
+            summary = "Get the orders of the authenticated user",
+            description = "Get one page of the order summaries of the authenticated user, newest first. "
+                    + "The next cursor of a page gives the following one.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Orders found"),
-                    @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+                    @ApiResponse(responseCode = "400", description = "Invalid size or cursor", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<List<OrderDto>> getByUserId(
-            Authentication authentication) {
+    public ResponseEntity<CursorPage<OrderSummaryDto>> getByUserId(
+            @RequestParam(required = false, name = "size", defaultValue = "20") Integer size,
+            @Parameter(description = "The next cursor of the previous page")
+            @RequestParam(required = false, name = "cursor") String cursor,
+            @Parameter(description = "Only orders with one of these statuses")
+            @RequestParam(required = false, name = "status") List<OrderStatus> statuses,
+            UserPrincipal principal) {
         return new ResponseEntity<>(
-                orderService.getOrdersByUserId(
-                        authService.getUserIdFromToken(
-                                authentication.getPrincipal().toString())
-                ),
+                orderService.getOrdersByUserId(principal.getId(), statuses, size, cursor),
                 HttpStatus.OK);
     }
 
+    @GetMapping(value = "/mine/stream", produces = OrderExportService.NDJSON)
+    @Operation(
+            summary = "Stream the orders of the authenticated user",
+            description = "Write every order of the authenticated user, newest first, as one JSON object per line.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Orders streamed")
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<StreamingResponseBody> streamByUserId(
+            @Parameter(description = "Only orders with one of these statuses")
+            @RequestParam(required = false, name = "status") List<OrderStatus> statuses,
+            UserPrincipal principal) {
+        long userId = principal.getId();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(OrderExportService.NDJSON))
+                .body(out -> orderExportService.exportOrdersOfUser(userId, statuses, out));
+    }
+
+    @GetMapping(value = "/export", produces = {OrderExportService.NDJSON, OrderExportService.CSV})
+    @Operation(
+            summary = "Export orders",
+            description = "Only admins can export orders. Write every order placed in the date range with one of the "
+                    + "statuses, oldest first, as one JSON object per line or as CSV with one line per item.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Orders exported"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<StreamingResponseBody> export(
+            @Parameter(description = "Only orders placed at or after this date")
+            @RequestParam(required = false, name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only orders placed before this date")
+            @RequestParam(required = false, name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Only orders with one of these statuses")
+            @RequestParam(required = false, name = "status") List<OrderStatus> statuses,
+            @Parameter(description = "ndjson or csv")
+            @RequestParam(required = false, name = "format", defaultValue = "ndjson") String format,
+            UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
+            throw new ForbiddenException("You are not allowed to export orders.");
+        }
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new BadRequestException("Format must be ndjson or csv");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? OrderExportService.CSV : OrderExportService.NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders." + (csv ? "csv" : "ndjson"))
+                .body(out -> orderExportService.exportOrders(from, to, statuses, csv, out));
+    }
+
     @PutMapping("/{id}")
     @Operation(
             summary = "Update the status of an order by ID",
@@ -126,7 +188,8 @@ public class OrderController {
                     @ApiResponse(responseCode = "200", description = "Order status updated"),
                     @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
-                    @ApiResponse(responseCode = "404", description = "Order not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+                    @ApiResponse(responseCode = "404", description = "Order not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "409", description = "Order has expired", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
@@ -135,10 +198,9 @@ public class OrderController {
             @PathVariable long id,
             @Parameter(description = "New status of the order", required = true)
             @RequestParam OrderStatus status,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
+            UserPrincipal principal) {
         OrderDto existingOrder = orderService.getOrderById(id);
-        if (authService.isNotAdmin(token) && authService.isNotUserAssociatedWithOrder(token, existingOrder)) {
+        if (authService.isNotAdmin(principal) && authService.isNotUserAssociatedWithOrder(principal, existingOrder)) {
             throw new ForbiddenException("You are not allowed to update the status of this order.");
         }
         OrderDto updatedOrder = orderService.updateOrderStatus(id, status);
@@ -160,10 +222,9 @@ public class OrderController {
     public ResponseEntity<Void> delete(
             @Parameter(description = "ID of the order to be deleted", required = true)
             @PathVariable long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
+            UserPrincipal principal) {
         OrderDto existingOrder = orderService.getOrderById(id);
-        if (authService.isNotAdmin(token) && authService.isNotUserAssociatedWithOrder(token, existingOrder)) {
+        if (authService.isNotAdmin(principal) && authService.isNotUserAssociatedWithOrder(principal, existingOrder)) {
             throw new ForbiddenException("You are not allowed to delete this order.");
         }
         orderService.deleteOrder(id);
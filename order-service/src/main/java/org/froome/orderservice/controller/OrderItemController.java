@@ -1,9 +1,8 @@
 package org.froome.orderservice.controller;
 
-import org.froome.orderservice.exception.ForbiddenException;
+import org.froome.orderservice.config.UserPrincipal;
 import org.froome.orderservice.model.dto.ExceptionDto;
 import org.froome.orderservice.model.dto.OrderItemDto;
-import org.froome.orderservice.service.AuthService;
 import org.froome.orderservice.service.OrderItemService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,7 +15,6 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
@@ -30,7 +28,6 @@ import java.util.List;
 public class OrderItemController {
 
     private final OrderItemService orderItemService;
-    private final AuthService authService;
 
     @PostMapping
     @Operation(
@@ -46,12 +43,8 @@ public class OrderItemController {
             @Parameter(description = "ID of the order", required = true)
             @PathVariable long orderId,
             @Valid @RequestBody OrderItemDto orderItemDto,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to add items to this order.");
-        }
-        OrderItemDto createdOrderItem = orderItemService.addItem(orderId, orderItemDto);
+            UserPrincipal principal) {
+        OrderItemDto createdOrderItem = orderItemService.addItem(orderId, orderItemDto, principal);
         return new ResponseEntity<>(createdOrderItem, HttpStatus.CREATED);
     }
 
@@ -68,12 +61,8 @@ public class OrderItemController {
     public ResponseEntity<List<OrderItemDto>> getAllItems(
             @Parameter(description = "ID of the order", required = true)
             @PathVariable long orderId,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to view items of this order.");
-        }
-        List<OrderItemDto> orderItems = orderItemService.getAllItems(orderId);
+            UserPrincipal principal) {
+        List<OrderItemDto> orderItems = orderItemService.getAllItems(orderId, principal);
         return new ResponseEntity<>(orderItems, HttpStatus.OK);
     }
 
@@ -93,12 +82,8 @@ public class OrderItemController {
             @PathVariable long orderId,
             @Parameter(description = "ID of the order item", required = true)
             @PathVariable long itemId,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to view this order item.");
-        }
-        OrderItemDto orderItem = orderItemService.getItemById(orderId, itemId);
+            UserPrincipal principal) {
+        OrderItemDto orderItem = orderItemService.getItemById(orderId, itemId, principal);
         return new ResponseEntity<>(orderItem, HttpStatus.OK);
     }
 
@@ -119,12 +104,8 @@ public class OrderItemController {
             @Parameter(description = "ID of the order item", required = true)
             @PathVariable long itemId,
             @Valid @RequestBody OrderItemDto orderItemDto,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to update this order item.");
-        }
-        OrderItemDto updatedOrderItem = orderItemService.updateItem(orderId, itemId, orderItemDto);
+            UserPrincipal principal) {
+        OrderItemDto updatedOrderItem = orderItemService.updateItem(orderId, itemId, orderItemDto, principal);
         return new ResponseEntity<>(updatedOrderItem, HttpStatus.OK);
     }
 
@@ -144,12 +125,8 @@ public class OrderItemController {
             @PathVariable long orderId,
             @Parameter(description = "ID of the order item", required = true)
             @PathVariable long itemId,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to delete this order item.");
-        }
-        orderItemService.deleteItem(orderId, itemId);
+            UserPrincipal principal) {
+        orderItemService.deleteItem(orderId, itemId, principal);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
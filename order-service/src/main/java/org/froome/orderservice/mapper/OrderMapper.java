@@ -0,0 +1,31 @@
+package org.froome.orderservice.mapper;
+
+import org.froome.orderservice.model.Order;
+import org.froome.orderservice.model.OrderItem;
+import org.froome.orderservice.model.dto.OrderDto;
+import org.froome.orderservice.model.dto.OrderItemDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+/**
+ * Order conversions, implemented at compile time by MapStruct. Related entities are reduced to their ids.
+ */
+@Mapper(componentModel = "spring")
+public interface OrderMapper {
+
+    @Mapping(target = "userId", source = "user.id")
+    OrderDto toDto(Order order);
+
+    @Mapping(target = "orderId", source = "order.id")
+    @Mapping(target = "productId", source = "product.id")
+    OrderItemDto toDto(OrderItem orderItem);
+
+    /**
+     * New order from a request: only the status is taken, the rest is set by the service.
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "user", ignore = true)
+    @Mapping(target = "orderDate", ignore = true)
+    @Mapping(target = "orderItems", ignore = true)
+    Order toEntity(OrderDto orderDto);
+}
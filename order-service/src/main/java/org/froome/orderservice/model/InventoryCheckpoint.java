@@ -0,0 +1,21 @@
+package org.froome.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Last epoch of an inventory ledger whose stock deltas were applied to the products table.
+ * Write-ahead log segments up to this epoch are already reflected in the database.
+ */
+@Entity
+@Table(name = "inventory_checkpoints")
+@Data
+public class InventoryCheckpoint {
+
+    @Id
+    @Column(name = "ledger", length = 64)
+    private String ledger;
+
+    @Column(name = "epoch", nullable = false)
+    private long epoch;
+}
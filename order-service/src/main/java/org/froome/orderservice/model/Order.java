@@ -6,7 +6,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_id_order_date_id", columnList = "user_id, order_date, id"),
+        @Index(name = "idx_orders_order_date_id", columnList = "order_date, id")
+})
 @Data
 public class Order {
 
@@ -0,0 +1,43 @@
+package org.froome.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read model of an order for the order lists, kept up to date in the transaction of every change to
+ * the order or its items, so that listing orders never reads their items.
+ */
+@Entity
+@Table(name = "order_summaries", indexes = {
+        @Index(name = "idx_order_summaries_user_id_order_date_order_id", columnList = "user_id, order_date, order_id")
+})
+@Data
+public class OrderSummary {
+
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "order_date", nullable = false)
+    private LocalDateTime orderDate;
+
+    @Column(name = "status", nullable = false)
+    private String status;
+
+    /**
+     * Units ordered, over all the items.
+     */
+    @Column(name = "item_count", nullable = false)
+    private int itemCount;
+
+    @Column(name = "total", nullable = false, precision = 12, scale = 2)
+    private Money total;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
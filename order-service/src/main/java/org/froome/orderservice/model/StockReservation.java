@@ -0,0 +1,38 @@
+package org.froome.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Stock held by an item of an unpaid order. Once {@code expiresAt} has passed, the quantity goes back
+ * to the product and the order is marked {@link OrderStatus#EXPIRED}, unless it was paid meanwhile.
+ */
+@Entity
+@Table(name = "stock_reservations", indexes = {
+        @Index(name = "idx_stock_reservations_expires_at", columnList = "expires_at"),
+        @Index(name = "idx_stock_reservations_order_id", columnList = "order_id")
+})
+@Data
+public class StockReservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_item_id", nullable = false, unique = true)
+    private Long orderItemId;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
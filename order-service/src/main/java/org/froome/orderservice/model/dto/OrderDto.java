@@ -3,6 +3,7 @@ package org.froome.orderservice.model.dto;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.froome.orderservice.model.OrderStatus;
 
 import java.time.LocalDateTime;
@@ -12,6 +13,7 @@ import static org.froome.orderservice.model.OrderStatus.CREATED;
 
 
 @Data
+@NoArgsConstructor
 public class OrderDto {
     @Schema(accessMode = Schema.AccessMode.READ_ONLY)
     private long id;
@@ -29,5 +31,14 @@ public class OrderDto {
 
     @Schema(accessMode = Schema.AccessMode.READ_ONLY)
     private List<OrderItemDto> orderItems;
-}
 
+    /**
+     * Order read by a JPQL constructor expression; its items are added separately.
+     */
+    public OrderDto(long id, LocalDateTime orderDate, String status, long userId) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.status = OrderStatus.valueOf(status);
+        this.userId = userId;
+    }
+}
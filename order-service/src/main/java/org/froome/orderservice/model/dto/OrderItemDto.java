@@ -1,9 +1,14 @@
 package org.froome.orderservice.model.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.froome.orderservice.model.Money;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class OrderItemDto {
 
     @Schema(accessMode = Schema.AccessMode.READ_ONLY)
@@ -13,6 +18,6 @@ public class OrderItemDto {
     private Long productId;
     private Integer quantity;
     @Schema(accessMode = Schema.AccessMode.READ_ONLY)
-    private float price;
+    private Money price;
 }
 
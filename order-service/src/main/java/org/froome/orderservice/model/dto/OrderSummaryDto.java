@@ -0,0 +1,34 @@
+package org.froome.orderservice.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.OrderStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class OrderSummaryDto {
+    private long id;
+    private long userId;
+    private LocalDateTime orderDate;
+    private OrderStatus status;
+    private int itemCount;
+    private Money total;
+    private LocalDateTime updatedAt;
+
+    /**
+     * Summary read by a JPQL constructor expression.
+     */
+    public OrderSummaryDto(long id, long userId, LocalDateTime orderDate, String status, int itemCount, Money total,
+                           LocalDateTime updatedAt) {
+        this.id = id;
+        this.userId = userId;
+        this.orderDate = orderDate;
+        this.status = OrderStatus.valueOf(status);
+        this.itemCount = itemCount;
+        this.total = total;
+        this.updatedAt = updatedAt;
+    }
+}
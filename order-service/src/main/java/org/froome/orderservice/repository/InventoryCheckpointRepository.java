@@ -0,0 +1,17 @@
+package org.froome.orderservice.repository;
+
+import org.froome.orderservice.model.InventoryCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface InventoryCheckpointRepository extends JpaRepository<InventoryCheckpoint, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO inventory_checkpoints (ledger, epoch) VALUES (:ledger, :epoch) " +
+            "ON DUPLICATE KEY UPDATE epoch = VALUES(epoch)", nativeQuery = true)
+    void saveEpoch(@Param("ledger") String ledger, @Param("epoch") long epoch);
+}
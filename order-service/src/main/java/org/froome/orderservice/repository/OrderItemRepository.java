@@ -1,9 +1,14 @@
 package org.froome.orderservice.repository;
 
 import org.froome.orderservice.model.OrderItem;
+import org.froome.orderservice.model.dto.OrderItemDto;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +20,15 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     Optional<OrderItem> findByOrderIdAndId(Long orderId, Long id);
 
     Optional<OrderItem> findByOrderIdAndProductId(Long orderId, Long productId);
+
+    @Modifying
+    @Query("DELETE FROM OrderItem i WHERE i.order.id = :orderId")
+    int deleteByOrderId(@Param("orderId") Long orderId);
+
+    /**
+     * Items of several orders in one query, without loading their orders or products.
+     */
+    @Query("SELECT new org.froome.orderservice.model.dto.OrderItemDto(i.id, i.order.id, i.product.id, i.quantity, i.price) " +
+            "FROM OrderItem i WHERE i.order.id IN :orderIds ORDER BY i.id")
+    List<OrderItemDto> findDtosByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -1,12 +1,46 @@
 package org.froome.orderservice.repository;
 
 import org.froome.orderservice.model.Order;
+import org.froome.orderservice.model.dto.OrderDto;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUserId(Long userId);
+
+    @Query("SELECT new org.froome.orderservice.model.dto.OrderDto(o.id, o.orderDate, o.status, o.user.id) FROM Order o WHERE o.id = :id")
+    Optional<OrderDto> findDtoById(@Param("id") Long id);
+
+    /**
+     * Deletes the order without loading it and its items.
+     */
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id = :id")
+    int deleteOrderById(@Param("id") Long id);
+
+    /**
+     * Reads the latest status and locks the order until the end of the transaction.
+     */
+    @Query(value = "SELECT status FROM orders WHERE id = :id FOR UPDATE", nativeQuery = true)
+    String lockStatus(@Param("id") Long id);
+
+    /**
+     * Locks the orders still holding stock, {@code CREATED} or {@code EXPIRED}, in id order. A payment
+     * committed before the lock leaves its order out; one attempted after it waits for the lock to go.
+     */
+    @Query(value = "SELECT id FROM orders WHERE id IN (:ids) AND status IN ('CREATED', 'EXPIRED') ORDER BY id FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockUnpaid(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "UPDATE orders SET status = 'EXPIRED' WHERE status = 'CREATED' AND id IN (:ids)", nativeQuery = true)
+    int expireOrders(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,86 @@
+package org.froome.orderservice.repository;
+
+import org.froome.orderservice.model.OrderSummary;
+import org.froome.orderservice.model.dto.OrderSummaryDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderSummaryRepository extends JpaRepository<OrderSummary, Long> {
+
+    @Query("SELECT new org.froome.orderservice.model.dto.OrderSummaryDto(s.orderId, s.userId, s.orderDate, s.status, " +
+            "s.itemCount, s.total, s.updatedAt) FROM OrderSummary s ORDER BY s.orderId")
+    List<OrderSummaryDto> findAllDtos(Pageable pageable);
+
+    /**
+     * Summaries of a user placed before the given position, newest first, seeking on the
+     * {@code (user_id, order_date, order_id)} index.
+     */
+    @Query("SELECT new org.froome.orderservice.model.dto.OrderSummaryDto(s.orderId, s.userId, s.orderDate, s.status, " +
+            "s.itemCount, s.total, s.updatedAt) FROM OrderSummary s " +
+            "WHERE s.userId = :userId AND s.status IN :statuses " +
+            "AND (s.orderDate < :orderDate OR (s.orderDate = :orderDate AND s.orderId < :id)) " +
+            "ORDER BY s.orderDate DESC, s.orderId DESC")
+    List<OrderSummaryDto> findDtosByUserIdBefore(@Param("userId") Long userId, @Param("statuses") Collection<String> statuses,
+                                                 @Param("orderDate") LocalDateTime orderDate, @Param("id") long id,
+                                                 Pageable pageable);
+
+    /**
+     * Adds to the count and total of the order, which may be negative.
+     *
+     * @return 0 when the order has no summary yet
+     */
+    @Modifying
+    @Query(value = "UPDATE order_summaries SET item_count = item_count + :quantity, total = total + :amount, " +
+            "updated_at = :now WHERE order_id = :orderId", nativeQuery = true)
+    int addItems(@Param("orderId") long orderId, @Param("quantity") int quantity, @Param("amount") BigDecimal amount,
+                 @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE order_summaries SET status = :status, updated_at = :now WHERE order_id = :orderId", nativeQuery = true)
+    int updateStatus(@Param("orderId") long orderId, @Param("status") String status, @Param("now") LocalDateTime now);
+
+    /**
+     * Follows {@link OrderRepository#expireOrders}.
+     */
+    @Modifying
+    @Query(value = "UPDATE order_summaries SET status = 'EXPIRED', updated_at = :now WHERE status = 'CREATED' " +
+            "AND order_id IN (:ids)", nativeQuery = true)
+    int expireOrders(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM OrderSummary s WHERE s.orderId = :orderId")
+    int deleteByOrderId(@Param("orderId") Long orderId);
+
+    /**
+     * Computes the summary of one order from its items, replacing the current one if any.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO order_summaries (order_id, user_id, order_date, status, item_count, total, updated_at) " +
+            "SELECT o.id, o.user_id, o.order_date, o.status, COALESCE(SUM(i.quantity), 0), COALESCE(SUM(i.price), 0), :now " +
+            "FROM orders o LEFT JOIN order_items i ON i.order_id = o.id WHERE o.id = :orderId " +
+            "GROUP BY o.id, o.user_id, o.order_date, o.status " +
+            "ON DUPLICATE KEY UPDATE status = VALUES(status), item_count = VALUES(item_count), total = VALUES(total), " +
+            "updated_at = VALUES(updated_at)", nativeQuery = true)
+    int refresh(@Param("orderId") long orderId, @Param("now") LocalDateTime now);
+
+    /**
+     * Computes the summaries of the orders that have none.
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO order_summaries (order_id, user_id, order_date, status, item_count, total, updated_at) " +
+            "SELECT o.id, o.user_id, o.order_date, o.status, COALESCE(SUM(i.quantity), 0), COALESCE(SUM(i.price), 0), :now " +
+            "FROM orders o LEFT JOIN order_items i ON i.order_id = o.id " +
+            "WHERE NOT EXISTS (SELECT 1 FROM order_summaries s WHERE s.order_id = o.id) " +
+            "GROUP BY o.id, o.user_id, o.order_date, o.status", nativeQuery = true)
+    int insertMissing(@Param("now") LocalDateTime now);
+}
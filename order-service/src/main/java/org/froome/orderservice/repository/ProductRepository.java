@@ -2,9 +2,30 @@ package org.froome.orderservice.repository;
 
 import org.froome.orderservice.model.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
-}
 
+    /**
+     * Takes the quantity from the stock in one statement, only if enough is left.
+     *
+     * @return 1 when the stock was decremented, 0 when the product is missing or short
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = p.stock - :quantity WHERE p.id = :id AND p.stock >= :quantity")
+    int decrementStock(@Param("id") long id, @Param("quantity") int quantity);
+
+    /**
+     * Reads the latest stock and locks the product until the end of the transaction.
+     */
+    @Query(value = "SELECT stock FROM products WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Integer lockStock(@Param("id") long id);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = p.stock + :quantity WHERE p.id = :id")
+    int incrementStock(@Param("id") long id, @Param("quantity") int quantity);
+}
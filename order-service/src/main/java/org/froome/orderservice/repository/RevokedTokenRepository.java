@@ -0,0 +1,25 @@
+package org.froome.orderservice.repository;
+
+import org.froome.orderservice.model.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    boolean existsByTokenDigest(String tokenDigest);
+
+    List<RevokedToken> findByExpiresAtAfterOrderByIdAsc(Instant now);
+
+    /**
+     * Revocations created since the given time, read through the {@code created_at} index.
+     */
+    List<RevokedToken> findByCreatedAtGreaterThanEqual(LocalDateTime since);
+
+    @Query(value = "SELECT NOW(6)", nativeQuery = true)
+    LocalDateTime databaseTime();
+}
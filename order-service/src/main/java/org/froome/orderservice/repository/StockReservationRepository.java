@@ -0,0 +1,68 @@
+package org.froome.orderservice.repository;
+
+import org.froome.orderservice.model.StockReservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    Optional<StockReservation> findByOrderItemId(Long orderItemId);
+
+    List<StockReservation> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.orderItemId = :orderItemId")
+    int deleteByOrderItemId(@Param("orderItemId") Long orderItemId);
+
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.orderId = :orderId")
+    int deleteByOrderId(@Param("orderId") Long orderId);
+
+    /**
+     * Moves the expiry of every reservation of the order, so that the items of a cart expire together.
+     */
+    @Modifying
+    @Query("UPDATE StockReservation r SET r.expiresAt = :expiresAt WHERE r.orderId = :orderId")
+    int extendOrder(@Param("orderId") Long orderId, @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Reservations past their expiry, oldest first, read through the expiry index.
+     */
+    @Query(value = "SELECT id FROM stock_reservations WHERE expires_at <= :now ORDER BY expires_at LIMIT :limit", nativeQuery = true)
+    List<Long> findExpiredIds(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Query(value = "SELECT DISTINCT order_id FROM stock_reservations WHERE id IN (:ids)", nativeQuery = true)
+    List<Long> findOrderIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Locks the expired reservations of the orders, so that the items of an order expire together, and reads
+     * their latest quantities. Reservations extended or deleted meanwhile are skipped.
+     */
+    @Query(value = "SELECT id, order_id AS orderId, product_id AS productId, quantity FROM stock_reservations " +
+            "WHERE expires_at <= :now AND order_id IN (:orderIds) FOR UPDATE", nativeQuery = true)
+    List<ExpiredReservation> lockExpiredOfOrders(@Param("orderIds") Collection<Long> orderIds, @Param("now") Instant now);
+
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    interface ExpiredReservation {
+        Long getId();
+
+        Long getOrderId();
+
+        Long getProductId();
+
+        Integer getQuantity();
+    }
+}
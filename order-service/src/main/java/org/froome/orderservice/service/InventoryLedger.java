@@ -0,0 +1,266 @@
+package org.froome.orderservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.orderservice.model.InventoryCheckpoint;
+import org.froome.orderservice.model.Product;
+import org.froome.orderservice.repository.InventoryCheckpointRepository;
+import org.froome.orderservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory stock of the hot products of a flash sale, enabled with {@code inventory.ledger.enabled}.
+ * <p>
+ * The stock of each configured product is loaded at startup into a {@link StripedCounter}, and every
+ * reservation or return is taken from it without touching the product row. Deltas are summed per epoch and
+ * written behind to the products table in one batch per epoch; each one is also appended to a
+ * {@link WriteAheadLog} before the caller is answered, and the segments of an epoch are deleted once the
+ * database holds both its deltas and its checkpoint. After a crash, the segments past the checkpoint are
+ * replayed into the products table before the ledger loads again.
+ * <p>
+ * The ledger assumes it is the only writer of the stock of its products: one order service instance owns
+ * them, and restocks made meanwhile in the product service only reach it at the next start.
+ */
+@Service
+@ConditionalOnProperty(prefix = "inventory.ledger", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryLedger {
+
+    private static final String APPLY_DELTA = "UPDATE products SET stock = stock + ? WHERE id = ?";
+
+    private final ProductRepository productRepository;
+    private final InventoryCheckpointRepository inventoryCheckpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${inventory.ledger.name:order-service}")
+    private String name;
+
+    @Value("${inventory.ledger.products:}")
+    private List<Long> productIds;
+
+    @Value("${inventory.ledger.stripes:0}")
+    private int stripes;
+
+    @Value("${inventory.ledger.wal-directory:/var/lib/froome/inventory-wal}")
+    private Path walDirectory;
+
+    private final Map<Long, StripedCounter> counters = new ConcurrentHashMap<>();
+    private volatile Epoch current;
+    private WriteAheadLog wal;
+
+    @PostConstruct
+    void init() throws IOException {
+        long checkpoint = inventoryCheckpointRepository.findById(name).map(InventoryCheckpoint::getEpoch).orElse(0L);
+        long lastEpoch = recover(checkpoint);
+        wal = new WriteAheadLog(walDirectory);
+        wal.deleteUpTo(lastEpoch);
+        current = new Epoch(lastEpoch + 1);
+
+        int stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        for (Long productId : productIds) {
+            productRepository.findById(productId).map(Product::getStock).ifPresentOrElse(
+                    stock -> counters.put(productId, new StripedCounter(stripeCount, stock)),
+                    () -> log.warn("Inventory ledger product {} does not exist", productId));
+        }
+        log.info("Inventory ledger {} holds the stock of products {}", name, counters.keySet());
+    }
+
+    public boolean tracks(long productId) {
+        return counters.containsKey(productId);
+    }
+
+    public long available(long productId) {
+        StripedCounter counter = counters.get(productId);
+        return counter != null ? counter.available() : 0;
+    }
+
+    /**
+     * Takes the quantity from the stock of a tracked product.
+     *
+     * @return false when not enough is left
+     */
+    public boolean reserve(long productId, int quantity) {
+        StripedCounter counter = counters.get(productId);
+        if (!counter.tryTake(quantity)) {
+            return false;
+        }
+        try {
+            record(productId, -quantity);
+        } catch (RuntimeException e) {
+            counter.give(quantity);
+            throw e;
+        }
+        onRollback(() -> {
+            counter.give(quantity);
+            record(productId, quantity);
+        });
+        return true;
+    }
+
+    public void release(long productId, int quantity) {
+        StripedCounter counter = counters.get(productId);
+        counter.give(quantity);
+        try {
+            record(productId, quantity);
+        } catch (RuntimeException e) {
+            counter.forceTake(quantity);
+            throw e;
+        }
+        onRollback(() -> {
+            counter.forceTake(quantity);
+            record(productId, -quantity);
+        });
+    }
+
+    /**
+     * Starts a new epoch, waits for the operations still recording into the previous one, and applies its
+     * deltas to the products table. Deltas that fail to apply are carried over to the next epoch.
+     */
+    @Scheduled(fixedDelayString = "${inventory.ledger.flush-millis:200}")
+    public synchronized void flush() {
+        Epoch epoch = current;
+        current = new Epoch(epoch.number + 1);
+        while (epoch.inFlight.sum() != 0) {
+            Thread.onSpinWait();
+        }
+
+        Map<Long, Long> deltas = new HashMap<>();
+        epoch.deltas.forEach((productId, delta) -> {
+            long sum = delta.sum();
+            if (sum != 0) {
+                deltas.put(productId, sum);
+            }
+        });
+        try {
+            if (!deltas.isEmpty()) {
+                apply(epoch.number, deltas);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not flush inventory epoch {}, retrying with the next one", epoch.number, e);
+            Epoch next = current;
+            deltas.forEach((productId, delta) -> next.deltas.computeIfAbsent(productId, key -> new LongAdder()).add(delta));
+            return;
+        }
+        try {
+            wal.deleteUpTo(epoch.number);
+        } catch (IOException e) {
+            log.warn("Could not delete the write-ahead log of inventory epoch {}", epoch.number, e);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        flush();
+        wal.close();
+    }
+
+    private void record(long productId, long delta) {
+        Epoch epoch = enter();
+        try {
+            CompletableFuture<Void> durable = wal.append(epoch.number, productId, delta);
+            LongAdder sum = epoch.deltas.computeIfAbsent(productId, key -> new LongAdder());
+            sum.add(delta);
+            try {
+                durable.join();
+            } catch (CompletionException e) {
+                sum.add(-delta);
+                throw new UncheckedIOException("Could not log the stock change of product " + productId,
+                        e.getCause() instanceof IOException io ? io : new IOException(e.getCause()));
+            }
+        } finally {
+            epoch.inFlight.decrement();
+        }
+    }
+
+    /**
+     * Registers an operation in the current epoch. An epoch swapped in the meantime is retried, so that
+     * {@link #flush()} never misses an operation it did not wait for.
+     */
+    private Epoch enter() {
+        while (true) {
+            Epoch epoch = current;
+            epoch.inFlight.increment();
+            if (epoch == current) {
+                return epoch;
+            }
+            epoch.inFlight.decrement();
+        }
+    }
+
+    private void apply(long epoch, Map<Long, Long> deltas) {
+        List<Object[]> updates = new ArrayList<>(deltas.size());
+        deltas.forEach((productId, delta) -> updates.add(new Object[]{delta, productId}));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(APPLY_DELTA, updates);
+            inventoryCheckpointRepository.saveEpoch(name, epoch);
+        });
+    }
+
+    /**
+     * Applies the segments left past the checkpoint by a previous run.
+     *
+     * @return the last epoch found in the database or in the segments
+     */
+    private long recover(long checkpoint) throws IOException {
+        long lastEpoch = checkpoint;
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Map.Entry<Long, Map<Long, Long>> segment : WriteAheadLog.replay(walDirectory).entrySet()) {
+            lastEpoch = Math.max(lastEpoch, segment.getKey());
+            if (segment.getKey() > checkpoint) {
+                segment.getValue().forEach((productId, delta) -> deltas.merge(productId, delta, Long::sum));
+            }
+        }
+        if (lastEpoch > checkpoint) {
+            deltas.values().removeIf(delta -> delta == 0);
+            log.info("Replaying inventory epochs {} to {} for products {}", checkpoint + 1, lastEpoch, deltas.keySet());
+            apply(lastEpoch, deltas);
+        }
+        return lastEpoch;
+    }
+
+    private static void onRollback(Runnable compensation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        compensation.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class Epoch {
+        private final long number;
+        private final Map<Long, LongAdder> deltas = new ConcurrentHashMap<>();
+        private final LongAdder inFlight = new LongAdder();
+
+        private Epoch(long number) {
+            this.number = number;
+        }
+    }
+}
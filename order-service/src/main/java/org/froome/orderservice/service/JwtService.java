@@ -1,27 +1,58 @@
 package org.froome.orderservice.service;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
+@RequiredArgsConstructor
 public class JwtService {
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${jwt.secret}")
     private String secret;
 
+    @Value("${jwt.cache.max-size:10000}")
+    private int maxCachedTokens;
+
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+    private JwtParser parser;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    @PostConstruct
+    void init() {
+        Key signingKey = new SecretKeySpec(Base64.getDecoder().decode(secret), SignatureAlgorithm.HS512.getJcaName());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        cacheHits = meterRegistry.counter("jwt.cache.requests", "result", "hit");
+        cacheMisses = meterRegistry.counter("jwt.cache.requests", "result", "miss");
+        Gauge.builder("jwt.cache.size", verifiedTokens, Map::size).register(meterRegistry);
+    }
+
     public boolean validateToken(String token) {
         try {
-            Key signingKey = new SecretKeySpec(Base64.getDecoder().decode(secret), SignatureAlgorithm.HS512.getJcaName());
-            JwtParser parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
-            parser.parseClaimsJws(token);
+            verify(token);
             return true;
         } catch (Exception e) {
             return false;
@@ -30,8 +61,59 @@ public class JwtService {
 
 
     public Map<String, Object> extractAllClaims(String token) {
-        Key signingKey = new SecretKeySpec(Base64.getDecoder().decode(secret), SignatureAlgorithm.HS512.getJcaName());
-        JwtParser parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
-        return parser.parseClaimsJws(token).getBody();
+        return verify(token);
+    }
+
+    /**
+     * Verifies the signature of the token, or returns the claims of a previous verification
+     * while the token has not expired. Tokens are keyed by their SHA-256 digest so the cache
+     * never holds the raw bearer credentials.
+     */
+    private Map<String, Object> verify(String token) {
+        String digest = digest(token);
+        long now = System.currentTimeMillis();
+
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                cacheHits.increment();
+                return cached.claims();
+            }
+            verifiedTokens.remove(digest, cached);
+        }
+
+        cacheMisses.increment();
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Map<String, Object> verifiedClaims = Collections.unmodifiableMap(claims);
+        if (claims.getExpiration() != null) {
+            cache(digest, new VerifiedToken(verifiedClaims, claims.getExpiration().getTime()), now);
+        }
+        return verifiedClaims;
+    }
+
+    private void cache(String digest, VerifiedToken verifiedToken, long now) {
+        if (verifiedTokens.size() >= maxCachedTokens) {
+            // Evict a tenth of the capacity at once so a full cache is not rescanned on every miss.
+            int target = maxCachedTokens - Math.max(1, maxCachedTokens / 10);
+            verifiedTokens.values().removeIf(entry -> entry.expiresAt() <= now);
+            Iterator<String> iterator = verifiedTokens.keySet().iterator();
+            while (verifiedTokens.size() > target && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        verifiedTokens.put(digest, verifiedToken);
+    }
+
+    public static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record VerifiedToken(Map<String, Object> claims, long expiresAt) {
     }
 }
@@ -0,0 +1,42 @@
+package org.froome.orderservice.service;
+
+import org.froome.orderservice.exception.BadRequestException;
+import org.froome.orderservice.model.dto.OrderSummaryDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last order of a page, newest first, handed to clients as an opaque string.
+ * The next page seeks strictly before it on {@code (order_date, id)}.
+ */
+record OrderCursor(LocalDateTime orderDate, long id) {
+
+    /**
+     * Position before every order, for the first page.
+     */
+    static final OrderCursor START = new OrderCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    static OrderCursor after(OrderSummaryDto last) {
+        return new OrderCursor(last.getOrderDate(), last.getId());
+    }
+
+    String encode() {
+        String value = orderDate + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static OrderCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+            if (parts.length == 2) {
+                return new OrderCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Falls through to the bad request below.
+        }
+        throw new BadRequestException("Invalid cursor");
+    }
+}
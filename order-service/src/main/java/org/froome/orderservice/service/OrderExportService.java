@@ -0,0 +1,169 @@
+package org.froome.orderservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.dto.OrderDto;
+import org.froome.orderservice.model.dto.OrderItemDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes orders with their items straight from one forward-only result set, without paging.
+ * <p>
+ * Rows are fetched from a server-side cursor {@code orders.export.fetch-size} at a time (the driver is set up
+ * with {@code useCursorFetch}), and each order is encoded as soon as its last item row is read. Encoded
+ * orders are sent to the client every {@code orders.export.chunk-size} orders. A slow client blocks the write
+ * of a chunk, and with it the next fetch, so memory never holds more than one fetch and one chunk.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderExportService {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final String SELECT = "SELECT o.id, o.user_id, o.order_date, o.status, i.id, i.product_id, i.quantity, i.price " +
+            "FROM orders o LEFT JOIN order_items i ON i.order_id = o.id ";
+    private static final String CSV_HEADER = "order_id,user_id,order_date,status,item_id,product_id,quantity,price\n";
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+
+    @Value("${orders.export.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${orders.export.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Exports the orders placed in {@code [from, to)}, oldest first, as NDJSON or as CSV with one line
+     * per item. Either bound may be null.
+     */
+    public void exportOrders(LocalDateTime from, LocalDateTime to, List<OrderStatus> statuses, boolean csv,
+                             OutputStream out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(statusFilter(statuses, args));
+        if (from != null) {
+            where.append(" AND o.order_date >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            where.append(" AND o.order_date < ?");
+            args.add(to);
+        }
+        if (csv) {
+            out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        }
+        stream(SELECT + where + " ORDER BY o.order_date, o.id, i.id", args, csv, out);
+    }
+
+    /**
+     * Writes every order of a user, newest first, as NDJSON.
+     */
+    public void exportOrdersOfUser(long userId, List<OrderStatus> statuses, OutputStream out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        String where = statusFilter(statuses, args) + " AND o.user_id = ?";
+        args.add(userId);
+        stream(SELECT + where + " ORDER BY o.order_date DESC, o.id DESC, i.id", args, false, out);
+    }
+
+    private void stream(String sql, List<Object> args, boolean csv, OutputStream out) throws IOException {
+        JdbcTemplate cursor = new JdbcTemplate(dataSource);
+        cursor.setFetchSize(fetchSize);
+        Chunk chunk = new Chunk(out, csv);
+        try {
+            cursor.query(sql, rs -> {
+                long orderId = rs.getLong(1);
+                if (chunk.order == null || chunk.order.getId() != orderId) {
+                    chunk.add(chunk.order);
+                    chunk.order = new OrderDto(orderId, rs.getObject(3, LocalDateTime.class), rs.getString(4), rs.getLong(2));
+                    chunk.order.setOrderItems(new ArrayList<>());
+                }
+                long itemId = rs.getLong(5);
+                if (!rs.wasNull()) {
+                    chunk.order.getOrderItems().add(new OrderItemDto(itemId, orderId, rs.getLong(6), rs.getInt(7),
+                            Money.of(rs.getBigDecimal(8))));
+                }
+            }, args.toArray());
+            chunk.add(chunk.order);
+            chunk.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String statusFilter(List<OrderStatus> statuses, List<Object> args) {
+        List<String> values = OrderService.statusValues(statuses);
+        args.addAll(values);
+        return "WHERE o.status IN (" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")";
+    }
+
+    /**
+     * Encoded orders waiting to be sent, and the order whose item rows are being read.
+     */
+    private final class Chunk {
+        private final OutputStream out;
+        private final boolean csv;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private int orders;
+        private OrderDto order;
+
+        private Chunk(OutputStream out, boolean csv) {
+            this.out = out;
+            this.csv = csv;
+        }
+
+        void add(OrderDto completed) {
+            if (completed == null) {
+                return;
+            }
+            try {
+                if (csv) {
+                    writeCsv(completed);
+                } else {
+                    buffer.write(objectMapper.writeValueAsBytes(completed));
+                    buffer.write('\n');
+                }
+                if (++orders >= chunkSize) {
+                    flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.writeTo(out);
+            out.flush();
+            buffer.reset();
+            orders = 0;
+        }
+
+        private void writeCsv(OrderDto completed) {
+            String prefix = completed.getId() + "," + completed.getUserId() + "," + completed.getOrderDate() + ","
+                    + completed.getStatus().getValue() + ",";
+            if (completed.getOrderItems().isEmpty()) {
+                buffer.writeBytes((prefix + ",,,\n").getBytes(StandardCharsets.UTF_8));
+            }
+            for (OrderItemDto item : completed.getOrderItems()) {
+                String line = prefix + item.getId() + "," + item.getProductId() + "," + item.getQuantity() + ","
+                        + item.getPrice() + "\n";
+                buffer.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
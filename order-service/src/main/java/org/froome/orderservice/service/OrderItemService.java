@@ -1,8 +1,12 @@
 package org.froome.orderservice.service;
 
+import org.froome.orderservice.config.UserPrincipal;
+import org.froome.orderservice.exception.ForbiddenException;
 import org.froome.orderservice.exception.NotFoundException;
+import org.froome.orderservice.mapper.OrderMapper;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.Order;
 import org.froome.orderservice.model.OrderStatus;
-import org.froome.orderservice.model.Product;
 import org.froome.orderservice.model.dto.OrderItemDto;
 import org.froome.orderservice.model.OrderItem;
 import org.froome.orderservice.repository.OrderItemRepository;
@@ -10,9 +14,10 @@ import org.froome.orderservice.repository.OrderRepository;
 import org.froome.orderservice.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -21,17 +26,59 @@ public class OrderItemService {
     private final OrderItemRepository orderItemRepository;
     private final OrderRepository orderRepository;
     private final ProductRepository productRepository;
+    private final AuthService authService;
+    private final StockService stockService;
+    private final StockReservationService stockReservationService;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderMapper orderMapper;
+    private final OrderSummaryService orderSummaryService;
+
+    /**
+     * Adds the quantity to the order. Takes of coalesced products wait for their batch before the
+     * transaction opens, so that the waiting callers hold no connection; their stock is given back if
+     * the item cannot be added.
+     * <p>
+     * Like every change to the items, the transaction locks the order row first, before reading anything, and
+     * the product last, in the order of the reservation sweep, so that the two wait for each other instead of
+     * deadlocking.
+     */
+    public OrderItemDto addItem(Long orderId, OrderItemDto orderItemDto, UserPrincipal principal) {
+        if (!stockService.coalesces(orderItemDto.getProductId())) {
+            return transactionTemplate.execute(status -> {
+                String orderStatus = orderRepository.lockStatus(orderId);
+                Order order = getOrder(orderId, principal, "You are not allowed to add items to this order.");
+                checkQuantity(orderItemDto);
+                checkCreated(orderStatus);
+                OrderItemDto saved = saveItem(order, orderItemDto);
+                stockService.takeStock(orderItemDto.getProductId(), orderItemDto.getQuantity());
+                return saved;
+            });
+        }
 
-    public OrderItemDto addItem(Long orderId, OrderItemDto orderItemDto) {
-        if (orderItemDto.getQuantity() <= 0) {
-            throw new NotFoundException("Quantity must be greater than 0");
+        checkQuantity(orderItemDto);
+        stockService.takeCoalesced(orderItemDto.getProductId(), orderItemDto.getQuantity());
+        try {
+            return transactionTemplate.execute(status -> {
+                String orderStatus = orderRepository.lockStatus(orderId);
+                Order order = getOrder(orderId, principal, "You are not allowed to add items to this order.");
+                checkCreated(orderStatus);
+                return saveItem(order, orderItemDto);
+            });
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status ->
+                    stockService.returnStock(orderItemDto.getProductId(), orderItemDto.getQuantity()));
+            throw e;
         }
+    }
 
-        if (productRepository.findById(orderItemDto.getProductId()).orElseThrow(() -> new NotFoundException("Product not found")).getStock() < orderItemDto.getQuantity()) {
-            throw new NotFoundException("Not enough stock");
+    private void checkQuantity(OrderItemDto orderItemDto) {
+        if (orderItemDto.getQuantity() == null || orderItemDto.getQuantity() <= 0) {
+            throw new NotFoundException("Quantity must be greater than 0");
         }
+    }
 
-        switch (OrderStatus.valueOf(orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found")).getStatus())) {
+    private void checkCreated(String status) {
+        switch (OrderStatus.valueOf(status)) {
             case CREATED:
                 break;
             case PAID:
@@ -40,89 +87,111 @@ public class OrderItemService {
                 throw new NotFoundException("Order is already shipped");
             case DELIVERED:
                 throw new NotFoundException("Order is already delivered");
+            case EXPIRED:
+                throw new NotFoundException("Order has expired");
         }
+    }
 
-        OrderItem orderItem = orderItemRepository.findByOrderIdAndProductId(orderId, orderItemDto.getProductId()).orElse(null);
+    private OrderItemDto saveItem(Order order, OrderItemDto orderItemDto) {
+        OrderItem orderItem = orderItemRepository.findByOrderIdAndProductId(order.getId(), orderItemDto.getProductId()).orElse(null);
 
         if (orderItem != null) {
+            Money oldPrice = orderItem.getPrice();
             orderItem.setQuantity(orderItem.getQuantity() + orderItemDto.getQuantity());
-            orderItem.setPrice(orderItem.getProduct().getPrice() * orderItem.getQuantity());
+            orderItem.setPrice(orderItem.getProduct().getPrice().times(orderItem.getQuantity()));
             orderItem = orderItemRepository.save(orderItem);
-            removeQuantity(orderItem.getProduct().getId(), orderItemDto.getQuantity());
-            return toDto(orderItem);
+            orderSummaryService.itemsChanged(order.getId(), orderItemDto.getQuantity(), orderItem.getPrice().minus(oldPrice));
         } else {
-            return createOrderItem(orderId, orderItemDto);
+            orderItem = createOrderItem(order, orderItemDto);
+            orderSummaryService.itemsChanged(order.getId(), orderItem.getQuantity(), orderItem.getPrice());
         }
+        stockReservationService.reserve(orderItem);
+        return orderMapper.toDto(orderItem);
     }
 
-    private OrderItemDto createOrderItem(Long orderId, OrderItemDto orderItemDto) {
+    private OrderItem createOrderItem(Order order, OrderItemDto orderItemDto) {
         OrderItem orderItem = new OrderItem();
-        orderItem.setOrder(orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found")));
+        orderItem.setOrder(order);
         orderItem.setProduct(productRepository.findById(orderItemDto.getProductId()).orElseThrow(() -> new NotFoundException("Product not found")));
         orderItem.setQuantity(orderItemDto.getQuantity());
-        orderItem.setPrice(orderItemDto.getQuantity() * orderItem.getProduct().getPrice());
-        orderItem = orderItemRepository.save(orderItem);
-        removeQuantity(orderItem.getProduct().getId(), orderItemDto.getQuantity());
-        return toDto(orderItem);
+        orderItem.setPrice(orderItem.getProduct().getPrice().times(orderItemDto.getQuantity()));
+        return orderItemRepository.save(orderItem);
     }
 
-    public List<OrderItemDto> getAllItems(Long orderId) {
-        return orderItemRepository.findByOrderId(orderId).stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+    public List<OrderItemDto> getAllItems(Long orderId, UserPrincipal principal) {
+        getOrder(orderId, principal, "You are not allowed to view items of this order.");
+        return orderItemRepository.findDtosByOrderIdIn(List.of(orderId));
     }
 
-    public OrderItemDto getItemById(Long orderId, Long itemId) {
+    public OrderItemDto getItemById(Long orderId, Long itemId, UserPrincipal principal) {
+        getOrder(orderId, principal, "You are not allowed to view this order item.");
         OrderItem orderItem = orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found"));
-        return toDto(orderItem);
+        return orderMapper.toDto(orderItem);
     }
 
-    public OrderItemDto updateItem(Long orderId, Long itemId, OrderItemDto orderItemDto) {
-        int oldQuantity = orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found")).getQuantity();
-
-        updateQuantity(orderItemDto.getProductId(), oldQuantity, orderItemDto.getQuantity());
-
+    @Transactional
+    public OrderItemDto updateItem(Long orderId, Long itemId, OrderItemDto orderItemDto, UserPrincipal principal) {
+        String status = orderRepository.lockStatus(orderId);
+        getOrder(orderId, principal, "You are not allowed to update this order item.");
+        if (OrderStatus.EXPIRED.getValue().equals(status)) {
+            throw new NotFoundException("Order has expired");
+        }
+        checkQuantity(orderItemDto);
         OrderItem orderItem = orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found"));
-        orderItem.setProduct(productRepository.findById(orderItemDto.getProductId()).orElseThrow(() -> new NotFoundException("Product not found")));
+        long oldProductId = orderItem.getProduct().getId();
+        int oldQuantity = orderItem.getQuantity();
+        Money oldPrice = orderItem.getPrice();
+
+        boolean sameProduct = orderItemDto.getProductId() == null || orderItemDto.getProductId() == oldProductId;
+        if (!sameProduct) {
+            orderItem.setProduct(productRepository.findById(orderItemDto.getProductId()).orElseThrow(() -> new NotFoundException("Product not found")));
+        }
         orderItem.setQuantity(orderItemDto.getQuantity());
-        orderItem.setPrice(orderItemDto.getPrice());
+        orderItem.setPrice(orderItem.getProduct().getPrice().times(orderItemDto.getQuantity()));
         orderItem = orderItemRepository.save(orderItem);
-        return toDto(orderItem);
-    }
-
-    public void deleteItem(Long orderId, Long itemId) {
-        addQuantity(orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found")).getProduct().getId(), orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found")).getQuantity());
+        orderSummaryService.itemsChanged(orderId, orderItem.getQuantity() - oldQuantity, orderItem.getPrice().minus(oldPrice));
+        if (OrderStatus.CREATED.getValue().equals(status)) {
+            stockReservationService.reserve(orderItem);
+        }
 
-        OrderItem orderItem = orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found"));
-        orderItemRepository.delete(orderItem);
+        if (sameProduct) {
+            int added = orderItemDto.getQuantity() - oldQuantity;
+            if (added > 0) {
+                stockService.takeStock(oldProductId, added);
+            } else if (added < 0) {
+                stockService.returnStock(oldProductId, -added);
+            }
+        } else {
+            stockService.takeStock(orderItemDto.getProductId(), orderItemDto.getQuantity());
+            stockService.returnStock(oldProductId, oldQuantity);
+        }
+        return orderMapper.toDto(orderItem);
     }
 
-    private OrderItemDto toDto(OrderItem orderItem) {
-        OrderItemDto dto = new OrderItemDto();
-        dto.setId(orderItem.getId());
-        dto.setOrderId(orderItem.getOrder().getId());
-        dto.setProductId(orderItem.getProduct().getId());
-        dto.setQuantity(orderItem.getQuantity());
-        dto.setPrice(orderItem.getPrice());
-        return dto;
+    @Transactional
+    public void deleteItem(Long orderId, Long itemId, UserPrincipal principal) {
+        String status = orderRepository.lockStatus(orderId);
+        getOrder(orderId, principal, "You are not allowed to delete this order item.");
+        deleteItem(orderId, itemId, status);
     }
 
-    private void removeQuantity(Long productId, int quantity) {
-        Product product = productRepository.findById(productId).orElseThrow(() -> new NotFoundException("Product not found"));
-        product.setStock(product.getStock() - quantity);
-        productRepository.save(product);
+    private void deleteItem(Long orderId, Long itemId, String status) {
+        OrderItem orderItem = orderItemRepository.findByOrderIdAndId(orderId, itemId).orElseThrow(() -> new NotFoundException("Order item not found"));
+        boolean reserved = stockReservationService.cancel(itemId);
+        orderItemRepository.delete(orderItem);
+        orderSummaryService.itemsChanged(orderId, -orderItem.getQuantity(), orderItem.getPrice().negate());
+        // An expired item has already given its stock back, unless it still had a reservation to cancel.
+        if (reserved || !OrderStatus.EXPIRED.getValue().equals(status)) {
+            stockService.returnStock(orderItem.getProduct().getId(), orderItem.getQuantity());
+        }
     }
 
-    private void addQuantity(Long productId, int quantity) {
-        Product product = productRepository.findById(productId).orElseThrow(() -> new NotFoundException("Product not found"));
-        product.setStock(product.getStock() + quantity);
-        productRepository.save(product);
+    private Order getOrder(Long orderId, UserPrincipal principal, String forbiddenMessage) {
+        Order order = orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found"));
+        if (authService.isNotUserAssociatedWithOrder(principal, order)) {
+            throw new ForbiddenException(forbiddenMessage);
+        }
+        return order;
     }
 
-    private void updateQuantity(Long productId, int oldQuantity, int newQuantity) {
-        Product product = productRepository.findById(productId).orElseThrow(() -> new NotFoundException("Product not found"));
-        product.setStock(product.getStock() + oldQuantity - newQuantity);
-        productRepository.save(product);
-    }
 }
-
@@ -1,69 +1,137 @@
 package org.froome.orderservice.service;
 
 import lombok.RequiredArgsConstructor;
+import org.froome.orderservice.exception.BadRequestException;
+import org.froome.orderservice.exception.ConflictException;
 import org.froome.orderservice.exception.NotFoundException;
+import org.froome.orderservice.mapper.OrderMapper;
 import org.froome.orderservice.model.Order;
 import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.dto.CursorPage;
 import org.froome.orderservice.model.dto.OrderDto;
+import org.froome.orderservice.model.dto.OrderItemDto;
+import org.froome.orderservice.model.dto.OrderSummaryDto;
 import org.froome.orderservice.repository.OrderItemRepository;
 import org.froome.orderservice.repository.OrderRepository;
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
+import org.froome.orderservice.repository.OrderSummaryRepository;
+import org.froome.orderservice.repository.StockReservationRepository;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    static final int MAX_PAGE_SIZE = 100;
+
     private final OrderRepository orderRepository;
-    private final ModelMapper modelMapper;
+    private final OrderMapper orderMapper;
     private final UserService userService;
-    private final OrderItemService orderItemService;
+    private final StockService stockService;
+    private final StockReservationRepository stockReservationRepository;
     private final OrderItemRepository orderItemRepository;
+    private final OrderSummaryRepository orderSummaryRepository;
+    private final OrderSummaryService orderSummaryService;
 
+    @Transactional
     public OrderDto createOrder(OrderDto orderDto, long userId) {
-        Order order = modelMapper.map(orderDto, Order.class);
+        Order order = orderMapper.toEntity(orderDto);
         order.setUser(userService.getUserById(userId));
         order.setOrderDate(LocalDateTime.now());
         Order savedOrder = orderRepository.save(order);
-        return modelMapper.map(savedOrder, OrderDto.class);
+        orderSummaryService.created(savedOrder);
+        return orderMapper.toDto(savedOrder);
     }
 
-    public List<OrderDto> getAllOrders(int page, int size) {
+    public List<OrderSummaryDto> getAllOrders(int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Order> orders = orderRepository.findAll(pageable);
-        return orders.stream()
-                .map(order -> modelMapper.map(order, OrderDto.class))
-                .collect(Collectors.toList());
+        return orderSummaryRepository.findAllDtos(pageable);
     }
 
     public OrderDto getOrderById(long id) {
-        Order order = orderRepository.findById(id).orElseThrow(() -> new NotFoundException("Order not found"));
-        return modelMapper.map(order, OrderDto.class);
+        OrderDto order = orderRepository.findDtoById(id).orElseThrow(() -> new NotFoundException("Order not found"));
+        return withItems(List.of(order)).get(0);
     }
     
-    public List<OrderDto> getOrdersByUserId(long userId) {
-        List<Order> orders = orderRepository.findByUserId(userId);
-        return orders.stream()
-                .map(order -> modelMapper.map(order, OrderDto.class))
-                .collect(Collectors.toList());
+    /**
+     * Reads one page of the order summaries of a user, newest first. A cursor from a previous page seeks
+     * past its last order, so the cost of a page only depends on its size.
+     */
+    public CursorPage<OrderSummaryDto> getOrdersByUserId(long userId, List<OrderStatus> statuses, int size, String cursor) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        OrderCursor after = cursor == null || cursor.isEmpty() ? OrderCursor.START : OrderCursor.decode(cursor);
+        List<OrderSummaryDto> orders = orderSummaryRepository.findDtosByUserIdBefore(userId, statusValues(statuses),
+                after.orderDate(), after.id(), PageRequest.of(0, size + 1));
+
+        boolean hasNext = orders.size() > size;
+        List<OrderSummaryDto> page = hasNext ? new ArrayList<>(orders.subList(0, size)) : orders;
+        return new CursorPage<>(page, size, hasNext ? OrderCursor.after(page.get(page.size() - 1)).encode() : null);
     }
 
+    /**
+     * Sets the status of the order. An expired order stays expired: the sweep has given its stock back, so
+     * reviving it would leave an order with no stock behind it.
+     */
+    @Transactional
     public OrderDto updateOrderStatus(long id, OrderStatus status) {
+        String current = orderRepository.lockStatus(id);
+        if (current == null) {
+            throw new NotFoundException("Order not found");
+        }
+        if (OrderStatus.EXPIRED.getValue().equals(current) && status != OrderStatus.EXPIRED) {
+            throw new ConflictException("Order has expired");
+        }
         Order order = orderRepository.findById(id).orElseThrow(() -> new NotFoundException("Order not found"));
         order.setStatus(status.getValue());
-        Order updatedOrder = orderRepository.save(order);
-        return modelMapper.map(updatedOrder, OrderDto.class);
+        orderRepository.save(order);
+        orderSummaryService.statusChanged(id, status.getValue());
+        return getOrderById(id);
     }
 
+    /**
+     * Deletes the order with a fixed number of statements whatever its number of items: the stock of all
+     * the items is given back by one grouped update, then the reservations, items and order are deleted in
+     * bulk. An expired order has already given its stock back, except for the items still reserved.
+     */
+    @Transactional
     public void deleteOrder(long id) {
-        orderItemRepository.findByOrderId(id).forEach(orderItem -> orderItemService.deleteItem(id, orderItem.getId()));
-        orderRepository.deleteById(id);
+        String status = orderRepository.lockStatus(id);
+        if (status == null) {
+            throw new NotFoundException("Order not found");
+        }
+        stockService.returnStockOfOrder(id, OrderStatus.EXPIRED.getValue().equals(status));
+        stockReservationRepository.deleteByOrderId(id);
+        orderItemRepository.deleteByOrderId(id);
+        orderRepository.deleteOrderById(id);
+        orderSummaryService.deleted(id);
+    }
+
+    static List<String> statusValues(List<OrderStatus> statuses) {
+        List<OrderStatus> selected = statuses == null || statuses.isEmpty() ? List.of(OrderStatus.values()) : statuses;
+        return selected.stream().map(OrderStatus::getValue).distinct().toList();
+    }
+
+    /**
+     * Adds their items to orders read as projections, with one query whatever the number of orders.
+     */
+    private List<OrderDto> withItems(List<OrderDto> orders) {
+        if (orders.isEmpty()) {
+            return orders;
+        }
+        Map<Long, List<OrderItemDto>> items = orderItemRepository.findDtosByOrderIdIn(orders.stream().map(OrderDto::getId).toList())
+                .stream()
+                .collect(Collectors.groupingBy(OrderItemDto::getOrderId));
+        orders.forEach(order -> order.setOrderItems(items.getOrDefault(order.getId(), new ArrayList<>())));
+        return orders;
     }
 }
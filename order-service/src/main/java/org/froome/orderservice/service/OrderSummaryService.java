@@ -0,0 +1,80 @@
+package org.froome.orderservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.Order;
+import org.froome.orderservice.model.OrderSummary;
+import org.froome.orderservice.repository.OrderSummaryRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Keeps the {@link OrderSummary} of each order in step with the order. Every change is applied as a
+ * delta by a single update, in the transaction of the caller, so its cost does not depend on the
+ * number of items.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderSummaryService {
+
+    private final OrderSummaryRepository orderSummaryRepository;
+
+    public void created(Order order) {
+        OrderSummary summary = new OrderSummary();
+        summary.setOrderId(order.getId());
+        summary.setUserId(order.getUser().getId());
+        summary.setOrderDate(order.getOrderDate());
+        summary.setStatus(order.getStatus());
+        summary.setTotal(Money.ZERO);
+        summary.setUpdatedAt(LocalDateTime.now());
+        orderSummaryRepository.save(summary);
+    }
+
+    /**
+     * Adds units and their amount to the order, or removes them when negative. An order placed before
+     * the summaries existed gets its summary computed from its items instead.
+     */
+    public void itemsChanged(long orderId, int quantity, Money amount) {
+        LocalDateTime now = LocalDateTime.now();
+        if (orderSummaryRepository.addItems(orderId, quantity, amount.toBigDecimal(), now) == 0) {
+            orderSummaryRepository.refresh(orderId, now);
+        }
+    }
+
+    public void statusChanged(long orderId, String status) {
+        LocalDateTime now = LocalDateTime.now();
+        if (orderSummaryRepository.updateStatus(orderId, status, now) == 0) {
+            orderSummaryRepository.refresh(orderId, now);
+        }
+    }
+
+    /**
+     * Marks expired the given orders that were still awaiting payment.
+     */
+    public void expired(Collection<Long> orderIds) {
+        orderSummaryRepository.expireOrders(orderIds, LocalDateTime.now());
+    }
+
+    public void deleted(long orderId) {
+        orderSummaryRepository.deleteByOrderId(orderId);
+    }
+
+    /**
+     * Computes the summaries missing for the orders placed before the summaries existed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfill() {
+        int inserted = orderSummaryRepository.insertMissing(LocalDateTime.now());
+        if (inserted > 0) {
+            log.info("Computed the summaries of {} orders", inserted);
+        }
+    }
+}
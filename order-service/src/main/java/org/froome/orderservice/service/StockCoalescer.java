@@ -0,0 +1,194 @@
+package org.froome.orderservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.orderservice.exception.ConflictException;
+import org.froome.orderservice.exception.NotFoundException;
+import org.froome.orderservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Combines the stock takes of one product arriving within a short window, enabled with
+ * {@code orders.coalescing.enabled}.
+ * <p>
+ * The first take of a product opens a batch that collects the following ones for {@code window-millis},
+ * or until {@code max-batch-size} takes have joined. The batch is then taken in its own transaction with
+ * one conditional decrement of the total. When the total is not available, the product row is locked and
+ * the takes are granted in arrival order while the stock lasts. Each caller gets its own outcome.
+ * <p>
+ * A batch commits on its own, and callers give their quantity back if they fail afterwards. They must not
+ * hold a connection while they wait, or a full pool would leave no connection for the batch.
+ */
+@Service
+@ConditionalOnProperty(prefix = "orders.coalescing", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class StockCoalescer {
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${orders.coalescing.window-millis:2}")
+    private long windowMillis;
+
+    @Value("${orders.coalescing.max-batch-size:128}")
+    private int maxBatchSize;
+
+    @Value("${orders.coalescing.threads:4}")
+    private int threads;
+
+    private final Map<Long, Batch> open = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "stock-coalescer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes the quantity along with the other takes of the product in the current window, and waits for
+     * the batch to commit.
+     *
+     * @throws ConflictException when not enough stock was left for this take
+     * @throws NotFoundException when the product does not exist
+     */
+    public void take(long productId, int quantity) {
+        CompletableFuture<Void> taken = new CompletableFuture<>();
+        while (true) {
+            Batch batch = open.computeIfAbsent(productId, this::openBatch);
+            if (batch.offer(quantity, taken)) {
+                break;
+            }
+            open.remove(productId, batch);
+        }
+        try {
+            taken.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Batch openBatch(long productId) {
+        Batch batch = new Batch(productId);
+        executor.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+        return batch;
+    }
+
+    private void flush(Batch batch) {
+        if (batch.close()) {
+            takeAll(batch);
+        }
+    }
+
+    private void takeAll(Batch batch) {
+        open.remove(batch.productId, batch);
+        try {
+            boolean[] granted = transactionTemplate.execute(status -> grant(batch));
+            for (int i = 0; i < batch.takes.size(); i++) {
+                Take take = batch.takes.get(i);
+                if (granted[i]) {
+                    take.taken().complete(null);
+                } else {
+                    take.taken().completeExceptionally(new ConflictException("Not enough stock"));
+                }
+            }
+        } catch (RuntimeException e) {
+            batch.takes.forEach(take -> take.taken().completeExceptionally(e));
+        }
+    }
+
+    private boolean[] grant(Batch batch) {
+        boolean[] granted = new boolean[batch.takes.size()];
+        if (productRepository.decrementStock(batch.productId, batch.total) == 1) {
+            Arrays.fill(granted, true);
+            return granted;
+        }
+        Integer stock = productRepository.lockStock(batch.productId);
+        if (stock == null) {
+            throw new NotFoundException("Product not found");
+        }
+        int remaining = stock;
+        for (int i = 0; i < granted.length; i++) {
+            int quantity = batch.takes.get(i).quantity();
+            if (quantity <= remaining) {
+                granted[i] = true;
+                remaining -= quantity;
+            }
+        }
+        if (remaining != stock) {
+            productRepository.decrementStock(batch.productId, stock - remaining);
+        }
+        log.debug("Granted {} of {} units of product {} to a batch of {} takes",
+                stock - remaining, batch.total, batch.productId, granted.length);
+        return granted;
+    }
+
+    private record Take(int quantity, CompletableFuture<Void> taken) {
+    }
+
+    private final class Batch {
+        private final long productId;
+        private final List<Take> takes = new ArrayList<>();
+        private int total;
+        private boolean closed;
+
+        private Batch(long productId) {
+            this.productId = productId;
+        }
+
+        /**
+         * @return false when the batch is already on its way, and the take must go to a new one
+         */
+        synchronized boolean offer(int quantity, CompletableFuture<Void> taken) {
+            if (closed || total > Integer.MAX_VALUE - quantity) {
+                return false;
+            }
+            takes.add(new Take(quantity, taken));
+            total += quantity;
+            if (takes.size() >= maxBatchSize) {
+                closed = true;
+                executor.execute(() -> takeAll(this));
+            }
+            return true;
+        }
+
+        synchronized boolean close() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+    }
+}
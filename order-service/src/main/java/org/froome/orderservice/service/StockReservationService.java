@@ -0,0 +1,222 @@
+package org.froome.orderservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.orderservice.model.OrderItem;
+import org.froome.orderservice.model.StockReservation;
+import org.froome.orderservice.repository.OrderRepository;
+import org.froome.orderservice.repository.StockReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Holds the stock of unpaid orders for a limited time.
+ * <p>
+ * Every item of a {@code CREATED} order has a row in {@code stock_reservations}, and any change to the order
+ * pushes the expiry of all its items to {@code orders.reservations.ttl} from now. The rows are the source of
+ * truth; a {@link TimingWheel} indexes their ids by expiry in memory, so that the sweeper finds the due ones
+ * without querying for them. Due ids are expired in batches, each in one transaction that locks the unpaid orders,
+ * then the rows still expired, gives the stock of the unpaid ones back, marks their orders {@code EXPIRED} and
+ * deletes the rows. Reservations written by other instances, or missed because a batch failed, are caught up
+ * through the expiry index.
+ * <p>
+ * Everything that changes the reservations of an order locks the order row first and the products last, so
+ * that the sweep, payments and item changes wait for each other instead of deadlocking.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockReservationService {
+
+    private final StockReservationRepository stockReservationRepository;
+    private final OrderRepository orderRepository;
+    private final StockService stockService;
+    private final OrderSummaryService orderSummaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${orders.reservations.ttl:15m}")
+    private Duration ttl;
+
+    @Value("${orders.reservations.tick-millis:1000}")
+    private long tickMillis;
+
+    @Value("${orders.reservations.wheel-size:64}")
+    private int wheelSize;
+
+    @Value("${orders.reservations.levels:4}")
+    private int levels;
+
+    @Value("${orders.reservations.batch-size:500}")
+    private int batchSize;
+
+    private TimingWheel wheel;
+
+    @PostConstruct
+    void init() {
+        wheel = new TimingWheel(tickMillis, wheelSize, levels, System.currentTimeMillis());
+        Gauge.builder("orders.reservations.wheel.size", this, service -> service.wheel.size()).register(meterRegistry);
+    }
+
+    /**
+     * Indexes the open reservations, in pages of the primary key.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long lastId = 0;
+        int loaded = 0;
+        List<StockReservation> page;
+        do {
+            page = stockReservationRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize));
+            for (StockReservation reservation : page) {
+                wheel.add(reservation.getId(), reservation.getExpiresAt().toEpochMilli());
+                lastId = reservation.getId();
+            }
+            loaded += page.size();
+        } while (page.size() == batchSize);
+        log.info("Loaded {} stock reservations", loaded);
+    }
+
+    /**
+     * Reserves the current quantity of the item and extends the other reservations of its order.
+     * Must run in the transaction that locked the order.
+     */
+    public void reserve(OrderItem orderItem) {
+        Instant expiresAt = Instant.now().plus(ttl);
+        StockReservation reservation = stockReservationRepository.findByOrderItemId(orderItem.getId()).orElseGet(StockReservation::new);
+        reservation.setOrderItemId(orderItem.getId());
+        reservation.setOrderId(orderItem.getOrder().getId());
+        reservation.setProductId(orderItem.getProduct().getId());
+        reservation.setQuantity(orderItem.getQuantity());
+        reservation.setExpiresAt(expiresAt);
+        long id = stockReservationRepository.save(reservation).getId();
+        // Inserted before the range update, so that the gap lock the update takes on the order index
+        // never sits in front of this insert.
+        stockReservationRepository.extendOrder(orderItem.getOrder().getId(), expiresAt);
+        // The entries of the other items stay at their previous expiry, where the sweeper finds them extended;
+        // this one expires them all along with it.
+        afterCommit(() -> wheel.add(id, expiresAt.toEpochMilli()));
+    }
+
+    /**
+     * Drops the reservation of the item, waiting for a sweep that is expiring it, and its entry in the wheel
+     * once committed.
+     *
+     * @return false when the item had no reservation left
+     */
+    public boolean cancel(Long orderItemId) {
+        Optional<Long> id = stockReservationRepository.findByOrderItemId(orderItemId).map(StockReservation::getId);
+        if (stockReservationRepository.deleteByOrderItemId(orderItemId) == 0) {
+            return false;
+        }
+        id.ifPresent(reservationId -> afterCommit(() -> wheel.cancel(reservationId)));
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${orders.reservations.tick-millis:1000}")
+    public void sweep() {
+        List<Long> due = new ArrayList<>();
+        wheel.advance(System.currentTimeMillis(), due::add);
+        expire(due);
+    }
+
+    /**
+     * Expires what the wheel does not know about: reservations of other instances, and batches that failed.
+     */
+    @Scheduled(fixedDelayString = "${orders.reservations.catch-up-millis:60000}", initialDelayString = "${orders.reservations.catch-up-millis:60000}")
+    public void catchUp() {
+        List<Long> due;
+        do {
+            due = stockReservationRepository.findExpiredIds(Instant.now(), batchSize);
+            if (expire(due) < due.size()) {
+                return;
+            }
+        } while (due.size() == batchSize);
+    }
+
+    /**
+     * @return the number of ids whose batch went through, expired or not
+     */
+    private int expire(List<Long> ids) {
+        int done = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status -> expireBatch(batch));
+                done += batch.size();
+            } catch (RuntimeException e) {
+                log.warn("Could not expire {} stock reservations, leaving them to the catch-up", batch.size(), e);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Expires the reservations of the orders of the candidates. The released quantities are read from the
+     * reservations locked after their orders, so that an order paid meanwhile keeps its stock.
+     */
+    private void expireBatch(List<Long> candidates) {
+        List<Long> orderIds = stockReservationRepository.findOrderIds(candidates);
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        Set<Long> unpaid = new HashSet<>(orderRepository.lockUnpaid(orderIds));
+        List<StockReservationRepository.ExpiredReservation> reservations =
+                stockReservationRepository.lockExpiredOfOrders(orderIds, Instant.now());
+        if (reservations.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(reservations.size());
+        Set<Long> expiring = new HashSet<>();
+        Map<Long, Integer> released = new HashMap<>();
+        for (StockReservationRepository.ExpiredReservation reservation : reservations) {
+            ids.add(reservation.getId());
+            if (unpaid.contains(reservation.getOrderId())) {
+                expiring.add(reservation.getOrderId());
+                released.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+            }
+        }
+        int orders = 0;
+        if (!expiring.isEmpty()) {
+            orders = orderRepository.expireOrders(expiring);
+            orderSummaryService.expired(expiring);
+        }
+        stockReservationRepository.deleteByIdIn(ids);
+        stockService.returnStock(released);
+        meterRegistry.counter("orders.reservations.expired").increment(ids.size());
+        log.debug("Expired {} stock reservations of {} orders", ids.size(), orders);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.froome.orderservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.froome.orderservice.exception.ConflictException;
+import org.froome.orderservice.exception.NotFoundException;
+import org.froome.orderservice.repository.ProductRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+public class StockService {
+
+    private static final String RETURN_STOCK = "UPDATE products SET stock = stock + ? WHERE id = ?";
+    private static final String ORDER_QUANTITIES = "SELECT i.product_id, SUM(i.quantity) AS quantity FROM order_items i " +
+            "WHERE i.order_id = ?";
+    private static final String RESERVED_ONLY = " AND i.id IN (SELECT r.order_item_id FROM stock_reservations r WHERE r.order_id = ?)";
+
+    private final ProductRepository productRepository;
+    private final Optional<InventoryLedger> inventoryLedger;
+    private final Optional<StockCoalescer> stockCoalescer;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Takes the quantity from the stock with a single conditional update, so that concurrent buyers
+     * of the last units cannot both succeed; the update rolls back with the rest of the transaction.
+     * The hot products of the inventory ledger, when enabled, are taken from memory instead.
+     */
+    public void takeStock(Long productId, int quantity) {
+        if (productId != null && tracked(productId)) {
+            if (!inventoryLedger.get().reserve(productId, quantity)) {
+                throw new ConflictException("Not enough stock");
+            }
+            return;
+        }
+        if (productId == null || productRepository.decrementStock(productId, quantity) == 0) {
+            if (productId == null || !productRepository.existsById(productId)) {
+                throw new NotFoundException("Product not found");
+            }
+            throw new ConflictException("Not enough stock");
+        }
+    }
+
+    /**
+     * Whether takes of the product go through the {@link StockCoalescer}: when it is enabled, for the
+     * products outside the inventory ledger.
+     */
+    public boolean coalesces(Long productId) {
+        return productId != null && stockCoalescer.isPresent() && !tracked(productId);
+    }
+
+    /**
+     * Takes the quantity in a batch committed on its own, outside of any transaction of the caller.
+     */
+    public void takeCoalesced(long productId, int quantity) {
+        stockCoalescer.orElseThrow().take(productId, quantity);
+    }
+
+    public void returnStock(long productId, int quantity) {
+        if (tracked(productId)) {
+            inventoryLedger.get().release(productId, quantity);
+        } else {
+            productRepository.incrementStock(productId, quantity);
+        }
+    }
+
+    /**
+     * Gives back the quantities of several products at once, in a single batch for the products
+     * outside the inventory ledger.
+     */
+    public void returnStock(Map<Long, Integer> quantities) {
+        List<Object[]> updates = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> {
+            if (tracked(productId)) {
+                inventoryLedger.get().release(productId, quantity);
+            } else {
+                updates.add(new Object[]{quantity, productId});
+            }
+        });
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(RETURN_STOCK, updates);
+        }
+    }
+
+    /**
+     * Gives back the quantities of all the items of an order, or only of those still holding a reservation,
+     * with one update joined to the quantities grouped per product. When the inventory ledger is enabled,
+     * the quantities are read first so that its products are given back through it.
+     */
+    public void returnStockOfOrder(long orderId, boolean reservedOnly) {
+        String quantities = ORDER_QUANTITIES + (reservedOnly ? RESERVED_ONLY : "") + " GROUP BY i.product_id";
+        Object[] args = reservedOnly ? new Object[]{orderId, orderId} : new Object[]{orderId};
+        if (inventoryLedger.isPresent()) {
+            Map<Long, Integer> byProduct = new HashMap<>();
+            jdbcTemplate.query(quantities, rs -> {
+                byProduct.put(rs.getLong(1), rs.getInt(2));
+            }, args);
+            returnStock(byProduct);
+            return;
+        }
+        jdbcTemplate.update("UPDATE products p JOIN (" + quantities + ") q ON q.product_id = p.id " +
+                "SET p.stock = p.stock + q.quantity", args);
+    }
+
+    private boolean tracked(long productId) {
+        return inventoryLedger.isPresent() && inventoryLedger.get().tracks(productId);
+    }
+}
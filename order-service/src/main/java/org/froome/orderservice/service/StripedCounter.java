@@ -0,0 +1,86 @@
+package org.froome.orderservice.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock of one product split across cache-line padded stripes, so that concurrent buyers take units
+ * from different memory locations with a compare-and-set instead of contending on a single value.
+ * <p>
+ * Each thread starts from its own stripe and moves on to the next ones when it runs short. Only when no
+ * single stripe holds the requested quantity are the stripes gathered under a lock, which is also the only
+ * place an insufficient stock is decided.
+ */
+final class StripedCounter {
+
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedCounter(int stripes, long initial) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            cells.set(i * PADDING, initial / size + (i < initial % size ? 1 : 0));
+        }
+    }
+
+    boolean tryTake(long quantity) {
+        int start = probe();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * PADDING;
+            long value = cells.get(index);
+            while (value >= quantity) {
+                if (cells.compareAndSet(index, value, value - quantity)) {
+                    return true;
+                }
+                value = cells.get(index);
+            }
+        }
+        return gatherAndTake(quantity);
+    }
+
+    void give(long quantity) {
+        cells.getAndAdd((probe() & mask) * PADDING, quantity);
+    }
+
+    /**
+     * Takes the quantity whatever the stock, to undo a give that was rolled back.
+     */
+    void forceTake(long quantity) {
+        cells.getAndAdd((probe() & mask) * PADDING, -quantity);
+    }
+
+    long available() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private synchronized boolean gatherAndTake(long quantity) {
+        long collected = 0;
+        for (int i = 0; i <= mask && collected < quantity; i++) {
+            long value = cells.get(i * PADDING);
+            while (value > 0 && !cells.compareAndSet(i * PADDING, value, 0)) {
+                value = cells.get(i * PADDING);
+            }
+            if (value > 0) {
+                collected += value;
+            }
+        }
+        boolean taken = collected >= quantity;
+        long surplus = taken ? collected - quantity : collected;
+        if (surplus > 0) {
+            cells.getAndAdd((probe() & mask) * PADDING, surplus);
+        }
+        return taken;
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().threadId();
+        return (int) (id ^ (id >>> 16)) * 0x9E3779B9;
+    }
+}
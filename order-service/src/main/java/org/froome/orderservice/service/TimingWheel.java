@@ -0,0 +1,178 @@
+package org.froome.orderservice.service;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timing wheel of ids by expiry time, in the manner of the Kafka and Netty timers.
+ * <p>
+ * Level 0 has one slot per tick; each slot of level {@code n} covers a whole turn of level {@code n - 1}.
+ * Adding an entry and expiring one are constant time whatever the number of entries, and advancing the
+ * clock only visits the slots of the elapsed ticks: when a turn of a level completes, the next slot of the
+ * level above is spread over the levels below. Entries beyond the range of the top level wait in its slots
+ * and are placed again each time their slot comes round.
+ * <p>
+ * Ids and expiry times are kept in primitive arrays, so that millions of entries stay cheap to hold.
+ */
+final class TimingWheel {
+
+    private final long tickMillis;
+    private final int shift;
+    private final int mask;
+    private final Bucket[][] levels;
+    private final Bucket overdue = new Bucket();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param wheelSize slots per level, a power of two
+     */
+    TimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+        if (tickMillis <= 0 || levelCount <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Tick and levels must be positive and wheel size a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.shift = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.levels = new Bucket[levelCount][wheelSize];
+        for (Bucket[] level : levels) {
+            for (int slot = 0; slot < wheelSize; slot++) {
+                level[slot] = new Bucket();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    synchronized void add(long id, long expiresAtMillis) {
+        place(id, expiresAtMillis);
+        size++;
+    }
+
+    /**
+     * Removes every entry of the id. Visits all the slots, which suits the occasional item removed from an
+     * order, not the bulk of the reservations that simply run out.
+     *
+     * @return whether the id had an entry
+     */
+    synchronized boolean cancel(long id) {
+        int removed = overdue.remove(id);
+        for (Bucket[] level : levels) {
+            for (Bucket bucket : level) {
+                removed += bucket.remove(id);
+            }
+        }
+        size -= removed;
+        return removed > 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Moves the clock to {@code nowMillis} and hands out every id whose expiry tick has been reached.
+     */
+    synchronized void advance(long nowMillis, LongConsumer expired) {
+        long targetTick = nowMillis / tickMillis;
+        drain(overdue, expired);
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.length - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (shift * level)) - 1)) == 0) {
+                    cascade(levels[level][slot(currentTick, level)]);
+                }
+            }
+            drain(levels[0][slot(currentTick, 0)], expired);
+            drain(overdue, expired);
+        }
+    }
+
+    private void place(long id, long expiresAtMillis) {
+        long expiryTick = expiresAtMillis / tickMillis;
+        long delta = expiryTick - currentTick;
+        if (delta <= 0) {
+            overdue.add(id, expiresAtMillis);
+            return;
+        }
+        int level = 0;
+        while (level < levels.length - 1 && delta >> (shift * (level + 1)) != 0) {
+            level++;
+        }
+        levels[level][slot(expiryTick, level)].add(id, expiresAtMillis);
+    }
+
+    private void cascade(Bucket bucket) {
+        int count = bucket.size;
+        if (count == 0) {
+            return;
+        }
+        long[] ids = bucket.ids;
+        long[] expiries = bucket.expiries;
+        bucket.clear();
+        for (int i = 0; i < count; i++) {
+            place(ids[i], expiries[i]);
+        }
+    }
+
+    private void drain(Bucket bucket, LongConsumer expired) {
+        int count = bucket.size;
+        if (count == 0) {
+            return;
+        }
+        long[] ids = bucket.ids;
+        bucket.clear();
+        size -= count;
+        for (int i = 0; i < count; i++) {
+            expired.accept(ids[i]);
+        }
+    }
+
+    private int slot(long tick, int level) {
+        return (int) ((tick >>> (shift * level)) & mask);
+    }
+
+    private static final class Bucket {
+        private static final long[] EMPTY = new long[0];
+
+        private long[] ids = EMPTY;
+        private long[] expiries = EMPTY;
+        private int size;
+
+        void add(long id, long expiresAtMillis) {
+            if (size == ids.length) {
+                int capacity = Math.max(4, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                expiries = Arrays.copyOf(expiries, capacity);
+            }
+            ids[size] = id;
+            expiries[size] = expiresAtMillis;
+            size++;
+        }
+
+        /**
+         * @return the number of entries removed
+         */
+        int remove(long id) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (ids[i] != id) {
+                    ids[kept] = ids[i];
+                    expiries[kept] = expiries[i];
+                    kept++;
+                }
+            }
+            int removed = size - kept;
+            size = kept;
+            return removed;
+        }
+
+        /**
+         * Lets go of the arrays, which the caller keeps reading.
+         */
+        void clear() {
+            ids = EMPTY;
+            expiries = EMPTY;
+            size = 0;
+        }
+    }
+}
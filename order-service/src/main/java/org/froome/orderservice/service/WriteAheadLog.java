@@ -0,0 +1,207 @@
+package org.froome.orderservice.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the stock deltas of the inventory ledger, in one segment file per epoch.
+ * <p>
+ * Appends are group committed: callers queue their record and wait, while a single writer thread writes
+ * everything queued so far and forces it to disk once for the whole batch. Every record carries a checksum,
+ * so that a record torn by a crash is ignored on replay.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final int RECORD_SIZE = 3 * Long.BYTES + Integer.BYTES;
+    private static final int MAX_BATCH = 4096;
+    private static final String SEGMENT_PREFIX = "epoch-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Map<Long, FileChannel> segments = new HashMap<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    WriteAheadLog(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.writer = new Thread(this::run, "inventory-wal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a delta; the future completes once it is on disk.
+     */
+    CompletableFuture<Void> append(long epoch, long productId, long delta) {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log is closed");
+        }
+        Entry entry = new Entry(epoch, productId, delta, new CompletableFuture<>());
+        queue.add(entry);
+        LockSupport.unpark(writer);
+        return entry.durable();
+    }
+
+    /**
+     * Deletes the segments of the epochs already applied to the database.
+     */
+    void deleteUpTo(long epoch) throws IOException {
+        synchronized (segments) {
+            Iterator<Map.Entry<Long, FileChannel>> open = segments.entrySet().iterator();
+            while (open.hasNext()) {
+                Map.Entry<Long, FileChannel> segment = open.next();
+                if (segment.getKey() <= epoch) {
+                    segment.getValue().close();
+                    open.remove();
+                }
+            }
+            for (Path file : segmentFiles(directory)) {
+                if (epochOf(file) <= epoch) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums the deltas left in the segments of a previous run, by epoch and product.
+     */
+    static Map<Long, Map<Long, Long>> replay(Path directory) throws IOException {
+        Map<Long, Map<Long, Long>> deltas = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return deltas;
+        }
+        CRC32 crc = new CRC32();
+        for (Path file : segmentFiles(directory)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.slice(start, RECORD_SIZE - Integer.BYTES));
+                long epoch = buffer.getLong();
+                long productId = buffer.getLong();
+                long delta = buffer.getLong();
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    break;
+                }
+                deltas.computeIfAbsent(epoch, key -> new HashMap<>()).merge(productId, delta, Long::sum);
+            }
+        }
+        return deltas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (segments) {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            segments.clear();
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        while (!closed || !queue.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            batch.clear();
+            do {
+                batch.add(entry);
+            } while (batch.size() < MAX_BATCH && (entry = queue.poll()) != null);
+
+            try {
+                write(batch, buffer, crc);
+                batch.forEach(written -> written.durable().complete(null));
+            } catch (IOException | RuntimeException e) {
+                batch.forEach(failed -> failed.durable().completeExceptionally(e));
+            }
+        }
+    }
+
+    private void write(List<Entry> batch, ByteBuffer buffer, CRC32 crc) throws IOException {
+        synchronized (segments) {
+            int i = 0;
+            while (i < batch.size()) {
+                long epoch = batch.get(i).epoch();
+                buffer.clear();
+                for (; i < batch.size() && batch.get(i).epoch() == epoch; i++) {
+                    Entry entry = batch.get(i);
+                    int start = buffer.position();
+                    buffer.putLong(entry.epoch()).putLong(entry.productId()).putLong(entry.delta());
+                    crc.reset();
+                    crc.update(buffer.slice(start, RECORD_SIZE - Integer.BYTES));
+                    buffer.putInt((int) crc.getValue());
+                }
+                buffer.flip();
+                FileChannel channel = segment(epoch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    private FileChannel segment(long epoch) throws IOException {
+        FileChannel channel = segments.get(epoch);
+        if (channel == null) {
+            channel = FileChannel.open(directory.resolve(SEGMENT_PREFIX + epoch + SEGMENT_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            segments.put(epoch, channel);
+            // Makes the new file itself survive a crash, not only its content.
+            try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+                parent.force(true);
+            } catch (IOException e) {
+                // Not supported on every platform.
+            }
+        }
+        return channel;
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static long epochOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record Entry(long epoch, long productId, long delta, CompletableFuture<Void> durable) {
+    }
+}
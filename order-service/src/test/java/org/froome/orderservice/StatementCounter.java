@@ -0,0 +1,39 @@
+package org.froome.orderservice;
+
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+
+/**
+ * Counts the statements sent to the database by the current thread, whether they come from Hibernate,
+ * Spring Data queries or a {@code JdbcTemplate}, by wrapping the data source of the test context.
+ */
+@TestConfiguration
+public class StatementCounter {
+
+    @Bean
+    static BeanPostProcessor countingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource).name(beanName).countQuery().build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    public static void reset() {
+        QueryCountHolder.clear();
+    }
+
+    public static long count() {
+        return QueryCountHolder.getGrandTotal().getTotal();
+    }
+}
@@ -0,0 +1,64 @@
+package org.froome.orderservice.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.testcontainers.containers.MySQLContainer;
+
+/**
+ * A MySQL container and the persistence beans of the service with the given components, without web,
+ * security or discovery, for the benchmarks to call the services the way the controllers do.
+ */
+public final class BenchmarkContext implements AutoCloseable {
+
+    private final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.4");
+    private final ConfigurableApplicationContext context;
+
+    public BenchmarkContext(Class<?>... components) {
+        this(new String[0], components);
+    }
+
+    /**
+     * @param properties {@code key=value} settings of the components, such as the {@code orders.*} ones
+     */
+    public BenchmarkContext(String[] properties, Class<?>... components) {
+        mysql.start();
+        context = new SpringApplicationBuilder(Persistence.class)
+                .sources(components)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + mysql.getJdbcUrl(),
+                        "spring.datasource.username=" + mysql.getUsername(),
+                        "spring.datasource.password=" + mysql.getPassword(),
+                        "spring.jpa.show-sql=false")
+                .properties(properties)
+                .run();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        mysql.stop();
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class, TransactionAutoConfiguration.class, JdbcTemplateAutoConfiguration.class})
+    @EntityScan("org.froome.orderservice.model")
+    @EnableJpaRepositories("org.froome.orderservice.repository")
+    static class Persistence {
+    }
+}
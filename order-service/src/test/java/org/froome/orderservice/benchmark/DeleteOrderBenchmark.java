@@ -0,0 +1,116 @@
+package org.froome.orderservice.benchmark;
+
+import org.froome.orderservice.mapper.OrderMapperImpl;
+import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.service.OrderService;
+import org.froome.orderservice.service.OrderSummaryService;
+import org.froome.orderservice.service.StockService;
+import org.froome.orderservice.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to delete an order awaiting payment, by number of items. Each measured deletion gets a fresh order,
+ * created before the iteration starts.
+ * <p>
+ * Needs Docker; run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.froome.orderservice.benchmark.DeleteOrderBenchmark} from order-service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class DeleteOrderBenchmark {
+
+    private static final int PRODUCTS = 100;
+
+    @Param({"10", "1000", "10000"})
+    private int items;
+
+    private BenchmarkContext context;
+    private OrderService orderService;
+    private JdbcTemplate jdbcTemplate;
+    private long userId;
+    private final List<Long> productIds = new ArrayList<>();
+    private long orderId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new BenchmarkContext(OrderService.class, OrderSummaryService.class, StockService.class,
+                UserService.class, OrderMapperImpl.class);
+        orderService = context.getBean(OrderService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        userId = new SimpleJdbcInsert(jdbcTemplate).withTableName("users").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("username", "buyer", "password", "password",
+                        "email", "buyer@froome.org", "address", "1 Main Street")).longValue();
+        SimpleJdbcInsert products = new SimpleJdbcInsert(jdbcTemplate).withTableName("products")
+                .usingGeneratedKeyColumns("id");
+        for (int i = 0; i < PRODUCTS; i++) {
+            productIds.add(products.executeAndReturnKey(Map.of("name", "Product " + i,
+                    "price", new BigDecimal("4.50"), "stock", 0)).longValue());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createOrder() {
+        LocalDateTime now = LocalDateTime.now();
+        orderId = new SimpleJdbcInsert(jdbcTemplate).withTableName("orders").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("user_id", userId, "order_date", now,
+                        "status", OrderStatus.CREATED.getValue())).longValue();
+
+        List<Object[]> rows = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            rows.add(new Object[]{orderId, productIds.get(i % PRODUCTS), 1, new BigDecimal("4.50")});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO order_items (order_id, product_id, quantity, price) VALUES (?, ?, ?, ?)", rows);
+        jdbcTemplate.update("INSERT INTO stock_reservations (order_item_id, order_id, product_id, quantity, expires_at) " +
+                "SELECT id, order_id, product_id, quantity, ? FROM order_items WHERE order_id = ?",
+                Timestamp.from(Instant.now().plusSeconds(900)), orderId);
+        jdbcTemplate.update("INSERT INTO order_summaries (order_id, user_id, order_date, status, item_count, total, updated_at) " +
+                "SELECT o.id, o.user_id, o.order_date, o.status, SUM(i.quantity), SUM(i.price), NOW(6) " +
+                "FROM orders o JOIN order_items i ON i.order_id = o.id WHERE o.id = ? " +
+                "GROUP BY o.id, o.user_id, o.order_date, o.status", orderId);
+    }
+
+    @Benchmark
+    public void deleteOrder() {
+        orderService.deleteOrder(orderId);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DeleteOrderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package org.froome.orderservice.benchmark;
+
+import org.froome.orderservice.service.StockCoalescer;
+import org.froome.orderservice.service.StockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock takes per second on one product bought by many threads at once: each take in its own transaction,
+ * as {@code OrderItemService} does without coalescing, against the same takes through the
+ * {@link StockCoalescer}. The stock is large enough for no take to be refused.
+ * <p>
+ * Needs Docker; run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.froome.orderservice.benchmark.HotProductBenchmark} from order-service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(64)
+@Fork(1)
+public class HotProductBenchmark {
+
+    private BenchmarkContext context;
+    private StockService stockService;
+    private TransactionTemplate transactionTemplate;
+    private long productId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new BenchmarkContext(new String[]{
+                "orders.coalescing.enabled=true",
+                "orders.coalescing.window-millis=2",
+                "orders.coalescing.max-batch-size=128",
+                "orders.coalescing.threads=4"
+        }, StockService.class, StockCoalescer.class);
+        stockService = context.getBean(StockService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        productId = new SimpleJdbcInsert(context.getBean(JdbcTemplate.class)).withTableName("products")
+                .usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("name", "Hot product", "price", new BigDecimal("4.50"),
+                        "stock", Integer.MAX_VALUE)).longValue();
+    }
+
+    @Benchmark
+    public void takeInOwnTransaction() {
+        transactionTemplate.executeWithoutResult(status -> stockService.takeStock(productId, 1));
+    }
+
+    @Benchmark
+    public void takeCoalesced() {
+        stockService.takeCoalesced(productId, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HotProductBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package org.froome.orderservice.benchmark;
+
+import org.froome.orderservice.mapper.OrderMapper;
+import org.froome.orderservice.mapper.OrderMapperImpl;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.Order;
+import org.froome.orderservice.model.OrderItem;
+import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.Product;
+import org.froome.orderservice.model.User;
+import org.froome.orderservice.model.dto.OrderDto;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.config.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to convert an order with its items to a DTO, and a request to a new order, with the generated
+ * {@link OrderMapper} and with ModelMapper set up as the service used to have it.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.froome.orderservice.benchmark.OrderMapperBenchmark} from order-service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderMapperBenchmark {
+
+    @Param({"1", "20"})
+    private int items;
+
+    private final OrderMapper orderMapper = new OrderMapperImpl();
+    private ModelMapper modelMapper;
+    private Order order;
+    private OrderDto orderDto;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration()
+                .setFieldMatchingEnabled(true)
+                .setFieldAccessLevel(Configuration.AccessLevel.PRIVATE);
+
+        User user = new User();
+        user.setId(7L);
+        order = new Order();
+        order.setId(42L);
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus(OrderStatus.CREATED.getValue());
+        order.setOrderItems(new ArrayList<>());
+        for (int i = 0; i < items; i++) {
+            Product product = new Product();
+            product.setId(i);
+            OrderItem item = new OrderItem();
+            item.setId((long) i);
+            item.setOrder(order);
+            item.setProduct(product);
+            item.setQuantity(2);
+            item.setPrice(Money.of(new BigDecimal("9.00")));
+            order.getOrderItems().add(item);
+        }
+        orderDto = new OrderDto();
+    }
+
+    @Benchmark
+    public OrderDto toDtoMapStruct() {
+        return orderMapper.toDto(order);
+    }
+
+    @Benchmark
+    public OrderDto toDtoModelMapper() {
+        return modelMapper.map(order, OrderDto.class);
+    }
+
+    @Benchmark
+    public Order toEntityMapStruct() {
+        return orderMapper.toEntity(orderDto);
+    }
+
+    @Benchmark
+    public Order toEntityModelMapper() {
+        return modelMapper.map(orderDto, Order.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package org.froome.orderservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The filter over token digests, as {@link TokenRevocationService} fills it.
+ */
+class BloomFilterTest {
+
+    private static final int CAPACITY = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void containsNothingWhenEmpty() {
+        BloomFilter filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+
+        assertFalse(filter.mightContain(JwtService.digest("token-0")));
+        assertEquals(CAPACITY, filter.capacity());
+    }
+
+    @Test
+    void sizesItselfForTheCapacityAndRate() {
+        BloomFilter filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+
+        // About 9.6 bits per entry for a 1% rate.
+        long bits = filter.sizeInBytes() * 8;
+        assertTrue(bits >= 95_851 && bits < 95_851 + 64, "bits: " + bits);
+    }
+
+    @Test
+    void neverMissesADigestPut() {
+        BloomFilter filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.put(JwtService.digest("revoked-" + i));
+        }
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(filter.mightContain(JwtService.digest("revoked-" + i)), "revoked-" + i);
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheRateWhenFull() {
+        BloomFilter filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.put(JwtService.digest("revoked-" + i));
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(JwtService.digest("live-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < probes * FALSE_POSITIVE_RATE * 1.5, "false positives: " + falsePositives);
+    }
+
+    /**
+     * Puts from many threads, whose bits often share a word, must all stick.
+     */
+    @Test
+    void keepsEveryBitOfConcurrentPuts() throws Exception {
+        BloomFilter filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = first; i < CAPACITY; i += threads) {
+                        filter.put(JwtService.digest("revoked-" + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(filter.mightContain(JwtService.digest("revoked-" + i)), "revoked-" + i);
+        }
+    }
+}
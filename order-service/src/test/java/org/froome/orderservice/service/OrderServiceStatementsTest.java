@@ -0,0 +1,159 @@
+package org.froome.orderservice.service;
+
+import org.froome.orderservice.MySqlTest;
+import org.froome.orderservice.StatementCounter;
+import org.froome.orderservice.mapper.OrderMapperImpl;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.Order;
+import org.froome.orderservice.model.OrderItem;
+import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.OrderSummary;
+import org.froome.orderservice.model.Product;
+import org.froome.orderservice.model.StockReservation;
+import org.froome.orderservice.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that the statements sent to read or delete orders do not grow with their number of items, nor
+ * the statements to list orders with the number of orders, so that no N+1 selects come back.
+ */
+@Import({OrderService.class, OrderSummaryService.class, StockService.class, UserService.class, OrderMapperImpl.class,
+        StatementCounter.class})
+class OrderServiceStatementsTest extends MySqlTest {
+
+    private static final int QUANTITY = 2;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("buyer");
+        user.setPassword("password");
+        user.setEmail("buyer@froome.org");
+        user.setAddress("1 Main Street");
+        entityManager.persist(user);
+    }
+
+    @Test
+    void deletesAnyOrderWithTheSameStatements() {
+        long small = statementsOfDeleting(createOrder(10).getId());
+        long large = statementsOfDeleting(createOrder(100).getId());
+
+        assertEquals(small, large);
+    }
+
+    @Test
+    void deletingGivesTheStockBack() {
+        Order order = createOrder(5);
+        List<Long> productIds = order.getOrderItems().stream().map(item -> item.getProduct().getId()).toList();
+
+        statementsOfDeleting(order.getId());
+
+        for (Long productId : productIds) {
+            assertEquals(QUANTITY, entityManager.find(Product.class, productId).getStock());
+        }
+        assertNull(entityManager.find(Order.class, order.getId()));
+        assertNull(entityManager.find(OrderSummary.class, order.getId()));
+    }
+
+    @Test
+    void readsAnyOrderWithTheSameStatements() {
+        long small = createOrder(10).getId();
+        long large = createOrder(100).getId();
+
+        long smallStatements = statementsOf(() -> assertEquals(10, orderService.getOrderById(small).getOrderItems().size()));
+        long largeStatements = statementsOf(() -> assertEquals(100, orderService.getOrderById(large).getOrderItems().size()));
+
+        assertEquals(smallStatements, largeStatements);
+    }
+
+    @Test
+    void listsAnyNumberOfOrdersWithTheSameStatements() {
+        createOrder(3);
+        long oneOrder = statementsOf(() -> assertEquals(1, orderService.getAllOrders(0, 50).size()));
+        for (int i = 0; i < 20; i++) {
+            createOrder(3);
+        }
+        long manyOrders = statementsOf(() -> assertEquals(21, orderService.getAllOrders(0, 50).size()));
+
+        assertEquals(oneOrder, manyOrders);
+    }
+
+    private long statementsOfDeleting(long orderId) {
+        return statementsOf(() -> orderService.deleteOrder(orderId));
+    }
+
+    /**
+     * Counts the statements of the call alone, starting and ending with an empty persistence context.
+     */
+    private long statementsOf(Runnable call) {
+        entityManager.flush();
+        entityManager.clear();
+        StatementCounter.reset();
+        call.run();
+        entityManager.flush();
+        long statements = StatementCounter.count();
+        entityManager.clear();
+        return statements;
+    }
+
+    /**
+     * Creates an order awaiting payment with one reserved item per product, all of them out of stock.
+     */
+    private Order createOrder(int items) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus(OrderStatus.CREATED.getValue());
+        order.setOrderItems(new ArrayList<>());
+        entityManager.persist(order);
+        orderSummaryService.created(order);
+
+        for (int i = 0; i < items; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(Money.of(new BigDecimal("4.50")));
+            entityManager.persist(product);
+
+            OrderItem item = new OrderItem();
+            item.setOrder(order);
+            item.setProduct(product);
+            item.setQuantity(QUANTITY);
+            item.setPrice(product.getPrice().times(QUANTITY));
+            entityManager.persist(item);
+            order.getOrderItems().add(item);
+
+            StockReservation reservation = new StockReservation();
+            reservation.setOrderItemId(item.getId());
+            reservation.setOrderId(order.getId());
+            reservation.setProductId(product.getId());
+            reservation.setQuantity(QUANTITY);
+            reservation.setExpiresAt(Instant.now().plusSeconds(900));
+            entityManager.persist(reservation);
+        }
+        return order;
+    }
+}
@@ -0,0 +1,131 @@
+package org.froome.orderservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.froome.orderservice.MySqlTest;
+import org.froome.orderservice.model.OrderStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The expiry sweep racing the payments of the orders it expires, each payment as the payment service makes it.
+ */
+@Import({StockReservationService.class, StockService.class, OrderSummaryService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockReservationConcurrencyTest extends MySqlTest {
+
+    private static final int ORDERS = 100;
+    private static final int ROUNDS = 10;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void givesBackOnlyTheStockOfOrdersLeftUnpaid() throws Exception {
+        long userId = createUser();
+        for (int round = 0; round < ROUNDS; round++) {
+            long productId = createProduct();
+            List<Long> orderIds = new ArrayList<>();
+            for (int i = 0; i < ORDERS; i++) {
+                orderIds.add(createExpiredOrder(userId, productId));
+            }
+
+            sweepWhilePaying(orderIds);
+
+            int expired = countOrders(productId, OrderStatus.EXPIRED);
+            assertEquals(ORDERS, expired + countOrders(productId, OrderStatus.PAID));
+            assertEquals(expired, jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId));
+            assertEquals(0, jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM stock_reservations WHERE product_id = ?", Integer.class, productId));
+        }
+    }
+
+    private void sweepWhilePaying(List<Long> orderIds) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                start.await();
+                stockReservationService.catchUp();
+                return null;
+            }));
+            for (Long orderId : orderIds) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                            "UPDATE orders SET status = 'PAID' WHERE id = ? AND status = 'CREATED'", orderId));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int countOrders(long productId, OrderStatus status) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders o WHERE o.status = ? AND EXISTS " +
+                "(SELECT 1 FROM order_items i WHERE i.order_id = o.id AND i.product_id = ?)",
+                Integer.class, status.getValue(), productId);
+    }
+
+    private long createUser() {
+        String name = "buyer" + System.nanoTime();
+        return new SimpleJdbcInsert(jdbcTemplate).withTableName("users").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("username", name, "password", "password",
+                        "email", name + "@froome.org", "address", "1 Main Street")).longValue();
+    }
+
+    /**
+     * A product whose only unit in stock has been taken by each of the orders.
+     */
+    private long createProduct() {
+        return new SimpleJdbcInsert(jdbcTemplate).withTableName("products").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("name", "Hot product", "price", new BigDecimal("4.50"), "stock", 0))
+                .longValue();
+    }
+
+    /**
+     * An unpaid order of one unit whose reservation has run out, waiting for the sweep.
+     */
+    private long createExpiredOrder(long userId, long productId) {
+        long orderId = new SimpleJdbcInsert(jdbcTemplate).withTableName("orders").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("user_id", userId, "order_date", LocalDateTime.now(),
+                        "status", OrderStatus.CREATED.getValue())).longValue();
+        long itemId = new SimpleJdbcInsert(jdbcTemplate).withTableName("order_items").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("order_id", orderId, "product_id", productId, "quantity", 1,
+                        "price", new BigDecimal("4.50"))).longValue();
+        jdbcTemplate.update("INSERT INTO stock_reservations (order_item_id, order_id, product_id, quantity, expires_at) " +
+                "VALUES (?, ?, ?, 1, ?)", itemId, orderId, productId, Timestamp.from(Instant.now().minusSeconds(1)));
+        return orderId;
+    }
+}
@@ -0,0 +1,187 @@
+package org.froome.orderservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.froome.orderservice.MySqlTest;
+import org.froome.orderservice.config.UserPrincipal;
+import org.froome.orderservice.exception.ConflictException;
+import org.froome.orderservice.mapper.OrderMapperImpl;
+import org.froome.orderservice.model.Money;
+import org.froome.orderservice.model.OrderStatus;
+import org.froome.orderservice.model.Product;
+import org.froome.orderservice.model.dto.OrderItemDto;
+import org.froome.orderservice.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Many buyers of one product at once, each in its own transaction, as {@link OrderItemService} takes stock.
+ */
+@Import({OrderItemService.class, AuthService.class, StockService.class, StockReservationService.class,
+        OrderSummaryService.class, OrderMapperImpl.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockServiceConcurrencyTest extends MySqlTest {
+
+    private static final int THREADS = 32;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private OrderItemService orderItemService;
+
+    @Test
+    void sellsEachUnitOnce() throws Exception {
+        long productId = createProduct(50);
+
+        int[] outcome = buy(productId, 400, 1);
+
+        assertEquals(50, outcome[0]);
+        assertEquals(350, outcome[1]);
+        assertEquals(0, stockOf(productId));
+    }
+
+    @Test
+    void refusesTakesLargerThanTheRest() throws Exception {
+        long productId = createProduct(100);
+
+        int[] outcome = buy(productId, 200, 3);
+
+        assertEquals(33, outcome[0]);
+        assertEquals(167, outcome[1]);
+        assertEquals(1, stockOf(productId));
+    }
+
+    /**
+     * Orders without reservations yet share the last gap of the reservation index; adding their first items
+     * together must neither deadlock nor lose a unit.
+     */
+    @Test
+    void addsFirstItemsOfFreshOrdersTogether() throws Exception {
+        long productId = createProduct(1000);
+        long userId = createUser();
+        UserPrincipal principal = new UserPrincipal(userId, false, null);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            orderIds.add(createOrder(userId));
+        }
+
+        List<Callable<Void>> additions = new ArrayList<>();
+        for (Long orderId : orderIds) {
+            additions.add(() -> {
+                orderItemService.addItem(orderId, new OrderItemDto(null, null, productId, 1, null), principal);
+                return null;
+            });
+        }
+        runTogether(additions);
+
+        assertEquals(800, stockOf(productId));
+        assertEquals(200, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM stock_reservations WHERE product_id = ?", Integer.class, productId));
+    }
+
+    /**
+     * Starts all the buyers together and counts the takes that succeeded and those refused for lack of stock.
+     */
+    private int[] buy(long productId, int buyers, int quantity) throws Exception {
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        List<Callable<Void>> takes = new ArrayList<>(buyers);
+        for (int i = 0; i < buyers; i++) {
+            takes.add(() -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> stockService.takeStock(productId, quantity));
+                    taken.incrementAndGet();
+                } catch (ConflictException e) {
+                    refused.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        runTogether(takes);
+        return new int[]{taken.get(), refused.get()};
+    }
+
+    /**
+     * Runs the tasks on {@link #THREADS} threads, all released at once, and rethrows the first failure.
+     */
+    private void runTogether(List<Callable<Void>> tasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(tasks.size());
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long createProduct(int stock) {
+        Product product = new Product();
+        product.setName("Hot product");
+        product.setPrice(Money.of(new BigDecimal("9.99")));
+        product.setStock(stock);
+        return productRepository.save(product).getId();
+    }
+
+    private long createUser() {
+        String name = "buyer" + System.nanoTime();
+        return new SimpleJdbcInsert(jdbcTemplate).withTableName("users").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("username", name, "password", "password",
+                        "email", name + "@froome.org", "address", "1 Main Street")).longValue();
+    }
+
+    /**
+     * Creates an empty order with its summary, as {@link OrderService#createOrder} does.
+     */
+    private long createOrder(long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        long orderId = new SimpleJdbcInsert(jdbcTemplate).withTableName("orders").usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(Map.of("user_id", userId, "order_date", now,
+                        "status", OrderStatus.CREATED.getValue())).longValue();
+        jdbcTemplate.update("INSERT INTO order_summaries (order_id, user_id, order_date, status, item_count, total, updated_at) " +
+                "VALUES (?, ?, ?, ?, 0, 0, ?)", orderId, userId, now, OrderStatus.CREATED.getValue(), now);
+        return orderId;
+    }
+
+    private int stockOf(long productId) {
+        return productRepository.findById(productId).orElseThrow().getStock();
+    }
+}
@@ -0,0 +1,123 @@
+package org.froome.orderservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedCounterTest {
+
+    private static final int THREADS = 16;
+
+    @Test
+    void splitsTheInitialStockAcrossTheStripes() {
+        assertEquals(10, new StripedCounter(4, 10).available());
+        assertEquals(10, new StripedCounter(3, 10).available());
+        assertEquals(3, new StripedCounter(8, 3).available());
+        assertEquals(7, new StripedCounter(1, 7).available());
+    }
+
+    @Test
+    void gathersTheStripesForMoreThanAnyOneHolds() {
+        StripedCounter counter = new StripedCounter(4, 10);
+
+        assertFalse(counter.tryTake(11));
+        assertEquals(10, counter.available());
+
+        assertTrue(counter.tryTake(10));
+        assertEquals(0, counter.available());
+        assertFalse(counter.tryTake(1));
+    }
+
+    @Test
+    void forceTakeUndoesAGiveWhateverTheStock() {
+        StripedCounter counter = new StripedCounter(4, 2);
+
+        counter.forceTake(5);
+
+        assertEquals(-3, counter.available());
+        counter.give(5);
+        assertEquals(2, counter.available());
+    }
+
+    @Test
+    void sellsEachUnitOnceUnderContention() throws Exception {
+        StripedCounter counter = new StripedCounter(8, 100_000);
+        AtomicLong taken = new AtomicLong();
+        List<Callable<Void>> buyers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            buyers.add(() -> {
+                while (counter.tryTake(1)) {
+                    taken.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        runTogether(buyers);
+
+        assertEquals(100_000, taken.get());
+        assertEquals(0, counter.available());
+    }
+
+    /**
+     * Takes of several units, which often need a gather, racing gives: no unit is lost or made up.
+     */
+    @Test
+    void losesNoUnitsBetweenTakesAndGives() throws Exception {
+        StripedCounter counter = new StripedCounter(8, 1_000);
+        AtomicLong taken = new AtomicLong();
+        AtomicLong given = new AtomicLong();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int quantity = i % 4 + 1;
+            tasks.add(() -> {
+                for (int round = 0; round < 20_000; round++) {
+                    if (counter.tryTake(quantity)) {
+                        taken.addAndGet(quantity);
+                    }
+                    if (round % 3 == 0) {
+                        counter.give(1);
+                        given.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        runTogether(tasks);
+
+        assertEquals(1_000 + given.get() - taken.get(), counter.available());
+        assertTrue(counter.available() >= 0);
+    }
+
+    private static void runTogether(List<Callable<Void>> tasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>(tasks.size());
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.froome.orderservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A wheel of 10 ms ticks, 4 slots and 3 levels: level 0 spans 4 ticks, level 1 16 and level 2 64.
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    void firesOnTheTickOfTheExpiry() {
+        TimingWheel wheel = wheel();
+        wheel.add(1, 25);
+
+        assertEquals(List.of(), advance(wheel, 19));
+        assertEquals(List.of(1L), advance(wheel, 20));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesOverdueEntriesOnTheNextAdvance() {
+        TimingWheel wheel = wheel();
+        advance(wheel, 100);
+        wheel.add(1, 50);
+        wheel.add(2, 100);
+
+        assertEquals(List.of(1L, 2L), advance(wheel, 100));
+    }
+
+    /**
+     * Expiries on every level and beyond the top one, each handed down level by level as the clock reaches
+     * it, must fire on their own tick and not before.
+     */
+    @Test
+    void cascadesEntriesDownTheLevels() {
+        TimingWheel wheel = wheel();
+        Random random = new Random(42);
+        Map<Long, Long> expiryTicks = new HashMap<>();
+        for (long id = 0; id < 2_000; id++) {
+            long expiry = TICK + random.nextInt(299 * (int) TICK);
+            wheel.add(id, expiry);
+            expiryTicks.put(id, expiry / TICK);
+        }
+
+        Map<Long, Long> firedTicks = new HashMap<>();
+        for (long tick = 1; tick <= 300; tick++) {
+            long now = tick;
+            wheel.advance(tick * TICK, id -> assertNull(firedTicks.put(id, now)));
+        }
+
+        assertEquals(expiryTicks, firedTicks);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesEverythingDueInOneLongAdvance() {
+        TimingWheel wheel = wheel();
+        wheel.add(1, 30);
+        wheel.add(2, 300);
+        wheel.add(3, 3_000);
+        wheel.add(4, 3_010);
+
+        List<Long> fired = advance(wheel, 3_000);
+
+        assertEquals(List.of(1L, 2L, 3L), fired);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void cancelledEntriesNeverFire() {
+        TimingWheel wheel = wheel();
+        wheel.add(1, 30);
+        wheel.add(2, 30);
+        wheel.add(3, 500);
+        wheel.add(3, 900);
+
+        assertTrue(wheel.cancel(1));
+        assertTrue(wheel.cancel(3));
+        assertFalse(wheel.cancel(4));
+
+        assertEquals(1, wheel.size());
+        assertEquals(List.of(2L), advance(wheel, 1_000));
+    }
+
+    @Test
+    void cancelsEntriesAlreadyHandedDown() {
+        TimingWheel wheel = wheel();
+        wheel.add(1, 500);
+        advance(wheel, 480);
+
+        assertTrue(wheel.cancel(1));
+        assertEquals(List.of(), advance(wheel, 1_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void refusesAWheelSizeOtherThanAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(TICK, 6, 3, 0));
+    }
+
+    private static TimingWheel wheel() {
+        return new TimingWheel(TICK, 4, 3, 0);
+    }
+
+    private static List<Long> advance(TimingWheel wheel, long nowMillis) {
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(nowMillis, fired::add);
+        fired.sort(null);
+        return fired;
+    }
+}
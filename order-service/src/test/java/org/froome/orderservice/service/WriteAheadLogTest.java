@@ -0,0 +1,140 @@
+package org.froome.orderservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+
+    private static final int RECORD_SIZE = 3 * Long.BYTES + Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheDeltasByEpochAndProduct() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            CompletableFuture.allOf(
+                    log.append(1, 10, -2),
+                    log.append(1, 10, -3),
+                    log.append(1, 11, 4),
+                    log.append(2, 10, 7)).join();
+        }
+
+        assertEquals(Map.of(1L, Map.of(10L, -5L, 11L, 4L), 2L, Map.of(10L, 7L)), WriteAheadLog.replay(directory));
+    }
+
+    @Test
+    void replaysNothingWithoutADirectory() throws IOException {
+        assertTrue(WriteAheadLog.replay(directory.resolve("missing")).isEmpty());
+    }
+
+    @Test
+    void ignoresALastRecordCutShortByACrash() throws IOException {
+        writeThreeRecords();
+        Path segment = directory.resolve("epoch-1.wal");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(2L * RECORD_SIZE + RECORD_SIZE / 2);
+        }
+
+        assertEquals(Map.of(1L, Map.of(10L, 3L)), WriteAheadLog.replay(directory));
+    }
+
+    @Test
+    void ignoresALastRecordWithABadChecksum() throws IOException {
+        writeThreeRecords();
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("epoch-1.wal").toFile(), "rw")) {
+            long deltaOfLast = 2L * RECORD_SIZE + 2 * Long.BYTES;
+            file.seek(deltaOfLast);
+            long delta = file.readLong();
+            file.seek(deltaOfLast);
+            file.writeLong(delta + 1);
+        }
+
+        assertEquals(Map.of(1L, Map.of(10L, 3L)), WriteAheadLog.replay(directory));
+    }
+
+    /**
+     * Many appenders at once, whose records the writer thread forces to disk in shared batches.
+     */
+    @Test
+    void groupCommitsConcurrentAppends() throws Exception {
+        int threads = 16;
+        int appends = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            List<Future<List<CompletableFuture<Void>>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                long productId = i % 4;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<CompletableFuture<Void>> durable = new ArrayList<>(appends);
+                    for (int j = 0; j < appends; j++) {
+                        durable.add(log.append(1, productId, 1));
+                    }
+                    return durable;
+                }));
+            }
+            start.countDown();
+            for (Future<List<CompletableFuture<Void>>> future : futures) {
+                CompletableFuture.allOf(future.get().toArray(CompletableFuture[]::new)).join();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long each = (long) threads / 4 * appends;
+        assertEquals(Map.of(1L, Map.of(0L, each, 1L, each, 2L, each, 3L, each)), WriteAheadLog.replay(directory));
+        assertEquals((long) threads * appends * RECORD_SIZE, Files.size(directory.resolve("epoch-1.wal")));
+    }
+
+    @Test
+    void deletesTheSegmentsOfAppliedEpochs() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            CompletableFuture.allOf(log.append(1, 10, 1), log.append(2, 10, 2), log.append(3, 10, 3)).join();
+
+            log.deleteUpTo(2);
+            log.append(3, 10, 4).join();
+        }
+
+        assertFalse(Files.exists(directory.resolve("epoch-1.wal")));
+        assertFalse(Files.exists(directory.resolve("epoch-2.wal")));
+        assertEquals(Map.of(3L, Map.of(10L, 7L)), WriteAheadLog.replay(directory));
+    }
+
+    @Test
+    void refusesAppendsOnceClosed() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory);
+        log.close();
+
+        assertThrows(IllegalStateException.class, () -> log.append(1, 10, 1));
+    }
+
+    private void writeThreeRecords() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            log.append(1, 10, 1).join();
+            log.append(1, 10, 2).join();
+            log.append(1, 10, 5).join();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.froome.paymentservice.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import org.froome.paymentservice.service.JwtService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Accepts the principal headers signed by the gateway in place of a second JWT verification.
+ * The signature covers the digest of the bearer token, so the headers only vouch for the token they came with.
+ */
+@Component
+public class GatewayPrincipalVerifier {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+    public static final String IS_ADMIN_HEADER = "X-Is-Admin";
+    public static final String TOKEN_EXPIRATION_HEADER = "X-Token-Expiration";
+    public static final String SIGNATURE_HEADER = "X-Principal-Signature";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @Value("${gateway.principal.trusted:false}")
+    private boolean trusted;
+
+    @Value("${gateway.principal.secret:}")
+    private String secret;
+
+    private SecretKeySpec principalKey;
+
+    @PostConstruct
+    void init() {
+        if (trusted && !secret.isEmpty()) {
+            principalKey = new SecretKeySpec(Base64.getDecoder().decode(secret), HMAC_ALGORITHM);
+        }
+    }
+
+    /**
+     * Reads the principal forwarded by the gateway for this token.
+     *
+     * @return null when trusted mode is off or the headers are missing, expired or not signed by the gateway,
+     * in which case the token is verified by {@link JwtService} as usual
+     */
+    public UserPrincipal verify(String token, HttpServletRequest request) {
+        if (principalKey == null) {
+            return null;
+        }
+
+        String userId = request.getHeader(USER_ID_HEADER);
+        String isAdmin = request.getHeader(IS_ADMIN_HEADER);
+        String expiration = request.getHeader(TOKEN_EXPIRATION_HEADER);
+        String signature = request.getHeader(SIGNATURE_HEADER);
+        if (userId == null || isAdmin == null || expiration == null || signature == null) {
+            return null;
+        }
+
+        byte[] expected = sign(JwtService.digest(token), userId, isAdmin, expiration);
+        if (!MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+
+        try {
+            Instant expiresAt = Instant.ofEpochMilli(Long.parseLong(expiration));
+            if (!expiresAt.isAfter(Instant.now())) {
+                return null;
+            }
+            return new UserPrincipal(Long.parseLong(userId), Boolean.parseBoolean(isAdmin), expiresAt);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String tokenDigest, String userId, String isAdmin, String expiration) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(principalKey);
+            byte[] payload = String.join("|", tokenDigest, userId, isAdmin, expiration).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encode(mac.doFinal(payload));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to verify the principal headers", e);
+        }
+    }
+}
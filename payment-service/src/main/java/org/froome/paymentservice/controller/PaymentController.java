@@ -1,5 +1,6 @@
 package org.froome.paymentservice.controller;
 
+import org.froome.paymentservice.config.UserPrincipal;
 import org.froome.paymentservice.model.dto.PaymentDto;
 import org.froome.paymentservice.service.PaymentService;
 import org.froome.paymentservice.service.AuthService;
@@ -15,7 +16,6 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -42,12 +42,8 @@ public class PaymentController {
     public ResponseEntity<PaymentDto> createPayment(
             @Parameter(description = "ID of the order", required = true)
             @RequestParam Long orderId,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to make a payment for this order.");
-        }
-        PaymentDto createdPayment = paymentService.createPayment(orderId);
+            UserPrincipal principal) {
+        PaymentDto createdPayment = paymentService.createPayment(orderId, principal);
         return new ResponseEntity<>(createdPayment, HttpStatus.CREATED);
     }
 
@@ -65,12 +61,8 @@ public class PaymentController {
     public ResponseEntity<List<PaymentDto>> getPaymentsByOrderId(
             @Parameter(description = "ID of the order", required = true)
             @RequestParam Long orderId,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, orderId)) {
-            throw new ForbiddenException("You are not allowed to view payments for this order.");
-        }
-        List<PaymentDto> payments = paymentService.getPaymentsByOrderId(orderId);
+            UserPrincipal principal) {
+        List<PaymentDto> payments = paymentService.getPaymentsByOrderId(orderId, principal);
         return new ResponseEntity<>(payments, HttpStatus.OK);
     }
 
@@ -88,12 +80,8 @@ public class PaymentController {
     public ResponseEntity<PaymentDto> getPaymentById(
             @Parameter(description = "ID of the payment", required = true)
             @PathVariable Long id,
-            Authentication authentication) {
-        PaymentDto payment = paymentService.getPaymentById(id);
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotUserAssociatedWithOrder(token, payment.getOrderId())) {
-            throw new ForbiddenException("You are not allowed to view this payment.");
-        }
+            UserPrincipal principal) {
+        PaymentDto payment = paymentService.getPaymentById(id, principal);
         return new ResponseEntity<>(payment, HttpStatus.OK);
     }
 
@@ -111,9 +99,8 @@ public class PaymentController {
     public ResponseEntity<Void> deletePayment(
             @Parameter(description = "ID of the payment", required = true)
             @PathVariable Long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+            UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to delete this payment.");
         }
         paymentService.deletePayment(id);
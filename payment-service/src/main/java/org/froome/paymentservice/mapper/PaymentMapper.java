@@ -0,0 +1,16 @@
+package org.froome.paymentservice.mapper;
+
+import org.froome.paymentservice.model.Payment;
+import org.froome.paymentservice.model.dto.PaymentDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+/**
+ * Payment conversions, implemented at compile time by MapStruct.
+ */
+@Mapper(componentModel = "spring")
+public interface PaymentMapper {
+
+    @Mapping(target = "orderId", source = "order.id")
+    PaymentDto toDto(Payment payment);
+}
@@ -9,7 +9,8 @@ public enum OrderStatus {
     CREATED("CREATED"),
     PAID("PAID"),
     SHIPPED("SHIPPED"),
-    DELIVERED("DELIVERED");
+    DELIVERED("DELIVERED"),
+    EXPIRED("EXPIRED");
 
     private final String value;
 }
@@ -18,8 +18,8 @@ public class Product {
     @Column()
     private String description;
 
-    @Column(nullable = false)
-    private float price;
+    @Column(nullable = false, precision = 10, scale = 2)
+    private Money price;
 
     @Column(nullable = false)
     private int stock;
@@ -0,0 +1,39 @@
+package org.froome.paymentservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * A revoked bearer token, or, when {@code tokenDigest} is null, every token of the user
+ * that expires before {@code expiresAt}. Rows can be purged once {@code expiresAt} has passed.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_tokens_created_at", columnList = "created_at")
+})
+@Data
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "token_digest", length = 64, unique = true)
+    private String tokenDigest;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Set by the database on insert; the other instances poll for the rows created since they last looked.
+     */
+    @Column(name = "created_at", insertable = false, updatable = false,
+            columnDefinition = "DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6)")
+    private LocalDateTime createdAt;
+}
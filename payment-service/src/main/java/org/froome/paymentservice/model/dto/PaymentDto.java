@@ -2,7 +2,8 @@ package org.froome.paymentservice.model.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
-import java.math.BigDecimal;
+import org.froome.paymentservice.model.Money;
+
 import java.time.LocalDateTime;
 
 @Data
@@ -14,5 +15,5 @@ public class PaymentDto {
     private Long id;
     private Long orderId;
     private LocalDateTime paymentDate;
-    private BigDecimal amount;
+    private Money amount;
 }
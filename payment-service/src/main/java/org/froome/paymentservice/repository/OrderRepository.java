@@ -2,8 +2,28 @@ package org.froome.paymentservice.repository;
 
 import org.froome.paymentservice.model.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
+
+    /**
+     * Marks the order paid only while it is still awaiting payment, so that an order expired
+     * by the order service in the meantime is not paid for.
+     *
+     * @return 0 when the order is no longer {@code CREATED}
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = 'PAID' WHERE o.id = :id AND o.status = 'CREATED'")
+    int markPaid(@Param("id") Long id);
+
+    /**
+     * Keeps the summary of the order read by the order lists in step with {@link #markPaid}.
+     */
+    @Modifying
+    @Query(value = "UPDATE order_summaries SET status = 'PAID', updated_at = NOW(6) WHERE order_id = :id", nativeQuery = true)
+    int markSummaryPaid(@Param("id") Long id);
 }
@@ -1,6 +1,11 @@
 package org.froome.paymentservice.service;
 
+import org.froome.paymentservice.config.UserPrincipal;
+import org.froome.paymentservice.exception.ConflictException;
+import org.froome.paymentservice.exception.ForbiddenException;
 import org.froome.paymentservice.exception.NotFoundException;
+import org.froome.paymentservice.mapper.PaymentMapper;
+import org.froome.paymentservice.model.Money;
 import org.froome.paymentservice.model.Order;
 import org.froome.paymentservice.model.OrderItem;
 import org.froome.paymentservice.model.OrderStatus;
@@ -10,8 +15,8 @@ import org.froome.paymentservice.repository.PaymentRepository;
 import org.froome.paymentservice.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -22,9 +27,15 @@ public class PaymentService {
 
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
+    private final AuthService authService;
+    private final PaymentMapper paymentMapper;
 
-    public PaymentDto createPayment(Long orderId) {
+    @Transactional
+    public PaymentDto createPayment(Long orderId, UserPrincipal principal) {
         Order order = orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found"));
+        if (authService.isNotUserAssociatedWithOrder(principal, order)) {
+            throw new ForbiddenException("You are not allowed to make a payment for this order.");
+        }
 
         switch (OrderStatus.valueOf(order.getStatus())) {
             case CREATED:
@@ -35,29 +46,40 @@ public class PaymentService {
                 throw new NotFoundException("Order is already shipped");
             case DELIVERED:
                 throw new NotFoundException("Order is already delivered");
+            case EXPIRED:
+                throw new NotFoundException("Order has expired");
         }
 
         Payment payment = new Payment();
         payment.setOrder(order);
         payment.setPaymentDate(LocalDateTime.now());
-        payment.setAmount(getTotalAmount(orderId));
+        payment.setAmount(getTotalAmount(order));
         payment = paymentRepository.save(payment);
 
-        order.setStatus("PAID");
-        orderRepository.save(order);
+        if (orderRepository.markPaid(orderId) == 0) {
+            throw new ConflictException("Order has expired");
+        }
+        orderRepository.markSummaryPaid(orderId);
 
-        return toDto(payment);
+        return paymentMapper.toDto(payment);
     }
 
-    public List<PaymentDto> getPaymentsByOrderId(Long orderId) {
+    public List<PaymentDto> getPaymentsByOrderId(Long orderId, UserPrincipal principal) {
+        Order order = orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found"));
+        if (authService.isNotUserAssociatedWithOrder(principal, order)) {
+            throw new ForbiddenException("You are not allowed to view payments for this order.");
+        }
         return paymentRepository.findByOrderId(orderId).stream()
-                .map(this::toDto)
+                .map(paymentMapper::toDto)
                 .collect(Collectors.toList());
     }
 
-    public PaymentDto getPaymentById(Long id) {
+    public PaymentDto getPaymentById(Long id, UserPrincipal principal) {
         Payment payment = paymentRepository.findById(id).orElseThrow(() -> new NotFoundException("Payment not found"));
-        return toDto(payment);
+        if (authService.isNotUserAssociatedWithOrder(principal, payment.getOrder())) {
+            throw new ForbiddenException("You are not allowed to view this payment.");
+        }
+        return paymentMapper.toDto(payment);
     }
 
     public void deletePayment(Long id) {
@@ -70,24 +92,15 @@ public class PaymentService {
         paymentRepository.delete(payment);
     }
 
-    private PaymentDto toDto(Payment payment) {
-        PaymentDto dto = new PaymentDto();
-        dto.setId(payment.getId());
-        dto.setOrderId(payment.getOrder().getId());
-        dto.setPaymentDate(payment.getPaymentDate());
-        dto.setAmount(payment.getAmount());
-        return dto;
-    }
-
-    private BigDecimal getTotalAmount(Long orderId) {
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        for (OrderItem orderItem : orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException("Order not found")).getOrderItems()) {
-            totalAmount = totalAmount.add(
-                    BigDecimal.valueOf(orderItem.getQuantity()).multiply(
-                            BigDecimal.valueOf(orderItem.getProduct().getPrice())
-                    ));
+    /**
+     * Sums the line prices recorded on the order items, which are what the customer was shown,
+     * in cents so that no intermediate amount is allocated.
+     */
+    private Money getTotalAmount(Order order) {
+        long totalAmount = 0;
+        for (OrderItem orderItem : order.getOrderItems()) {
+            totalAmount = Math.addExact(totalAmount, orderItem.getPrice().minorUnits());
         }
-
-        return totalAmount;
+        return new Money(totalAmount);
     }
 }
@@ -0,0 +1,42 @@
+package org.froome.productservice.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * In-process caches for product reads. Statistics are recorded so that actuator exposes
+ * hit ratio, evictions and load time under the {@code cache.*} metrics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String PRODUCTS = "products";
+    public static final String PRODUCT_PAGES = "productPages";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${products.cache.product.max-size:10000}") long productMaxSize,
+                                     @Value("${products.cache.product.ttl:60s}") Duration productTtl,
+                                     @Value("${products.cache.pages.max-size:1000}") long pagesMaxSize,
+                                     @Value("${products.cache.pages.ttl:30s}") Duration pagesTtl) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(PRODUCTS, Caffeine.newBuilder()
+                .maximumSize(productMaxSize)
+                .expireAfterWrite(productTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(PRODUCT_PAGES, Caffeine.newBuilder()
+                .maximumSize(pagesMaxSize)
+                .expireAfterWrite(pagesTtl)
+                .recordStats()
+                .build());
+        return cacheManager;
+    }
+}
@@ -5,16 +5,20 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.froome.productservice.service.JwtService;
+import org.froome.productservice.service.TokenRevocationService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -22,24 +26,37 @@ import java.io.IOException;
 
 @Configuration
 @EnableWebSecurity
+@RequiredArgsConstructor
 public class SecurityConfig {
 
+    private final GatewayPrincipalVerifier gatewayPrincipalVerifier;
+    private final JwtService jwtService;
+    private final TokenRevocationService tokenRevocationService;
+
     @Bean
     public SecurityFilterChain apiFilterChain(HttpSecurity http) throws Exception {
         http
                 .authorizeHttpRequests(authorize -> authorize
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/products/import").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/products", "/api/products/*").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/products/lookup").permitAll()
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(new BearerTokenFilter(), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new BearerTokenFilter(gatewayPrincipalVerifier, jwtService, tokenRevocationService), UsernamePasswordAuthenticationFilter.class)
+                .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 
         return http.build();
     }
 
+    @RequiredArgsConstructor
     public static class BearerTokenFilter extends OncePerRequestFilter {
+        private final GatewayPrincipalVerifier gatewayPrincipalVerifier;
+        private final JwtService jwtService;
+        private final TokenRevocationService tokenRevocationService;
+
         @Override
         protected void doFilterInternal(HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
                 throws ServletException, IOException {
@@ -49,11 +66,25 @@ public class SecurityConfig {
 
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String token = authHeader.substring(7);
-                    Authentication auth = new BearerTokenAuthentication(token);
-                    SecurityContextHolder.getContext().setAuthentication(auth);
+                    UserPrincipal principal = authenticate(token, request);
+                    if (principal != null) {
+                        SecurityContextHolder.getContext().setAuthentication(new BearerTokenAuthentication(token, principal));
+                    }
                 }
             }
             filterChain.doFilter(request, response);
         }
+
+        private UserPrincipal authenticate(String token, HttpServletRequest request) {
+            UserPrincipal principal = gatewayPrincipalVerifier.verify(token, request);
+            if (principal == null) {
+                try {
+                    principal = UserPrincipal.fromClaims(jwtService.extractAllClaims(token));
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }
+            return tokenRevocationService.isRevoked(token, principal) ? null : principal;
+        }
     }
 }
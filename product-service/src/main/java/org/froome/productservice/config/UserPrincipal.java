@@ -0,0 +1,25 @@
+package org.froome.productservice.config;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Identity of the caller, parsed once per request by {@link SecurityConfig.BearerTokenFilter}.
+ */
+@Value
+public class UserPrincipal {
+    long id;
+    boolean admin;
+    Instant expiresAt;
+
+    public static UserPrincipal fromClaims(Map<String, Object> claims) {
+        Object expiration = claims.get("exp");
+        return new UserPrincipal(
+                Long.parseLong(claims.get("id").toString()),
+                Boolean.TRUE.equals(claims.get("isAdmin")),
+                expiration instanceof Number number ? Instant.ofEpochSecond(number.longValue()) : null
+        );
+    }
+}
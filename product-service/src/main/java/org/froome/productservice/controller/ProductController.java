@@ -1,11 +1,22 @@
 package org.froome.productservice.controller;
 
+import org.froome.productservice.config.UserPrincipal;
 import org.froome.productservice.exception.ForbiddenException;
 import org.froome.productservice.model.dto.ExceptionDto;
 import org.froome.productservice.model.dto.PagedResponse;
+import org.froome.productservice.model.dto.ProductFilter;
+import org.froome.productservice.model.dto.ProductImportProgress;
+import org.froome.productservice.model.dto.ProductImportReport;
+import org.froome.productservice.model.dto.ProductLookupResponse;
 import org.froome.productservice.model.dto.ProductDto;
 import org.froome.productservice.service.AuthService;
+import org.froome.productservice.service.CatalogSnapshotService;
+import org.froome.productservice.service.ProductFacetService;
+import org.froome.productservice.service.ProductImportService;
+import org.froome.productservice.service.ProductSearchService;
 import org.froome.productservice.service.ProductService;
+import org.froome.productservice.service.ProductVersionService;
+import org.froome.productservice.service.ProductViewService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,14 +24,34 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
 @RestController
 @RequestMapping("/api/products")
 @RequiredArgsConstructor
@@ -28,41 +59,147 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Product", description = "Specific to products, manages the creation, update and deletion of products.")
 public class ProductController {
 
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final ProductService productService;
     private final AuthService authService;
+    private final ProductViewService productViewService;
+    private final ProductSearchService productSearchService;
+    private final ProductFacetService productFacetService;
+    private final ProductVersionService productVersionService;
+    private final ProductImportService productImportService;
+    private final CatalogSnapshotService catalogSnapshotService;
 
     @GetMapping
     @Operation(
             summary = "Get all products",
-            description = "There is no need to be authenticated to get all products.",
+            description = "There is no need to be authenticated to get all products. Filtering on price or name, "
+                    + "including out of stock products, sorting by name or by descending price, or asking for facets "
+                    + "reads from an in-memory index, and pages by number only.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Products found"),
+                    @ApiResponse(responseCode = "304", description = "Catalog not modified since the ETag in If-None-Match"),
                     @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             }
     )
     public ResponseEntity<PagedResponse<ProductDto>> getAll(
             @RequestParam(required = false, name = "page", defaultValue = "0") Integer page,
-            @RequestParam(required = false, name = "size", defaultValue = "10") Integer size
-    ) {
-        PagedResponse<ProductDto> products = productService.getProducts(page, size);
+            @RequestParam(required = false, name = "size", defaultValue = "10") Integer size,
+            @Parameter(description = "Sort key, one of id, price, -price, name or -name")
+            @RequestParam(required = false, name = "sort", defaultValue = "id") String sort,
+            @Parameter(description = "The next cursor of the previous page; takes precedence over every other parameter")
+            @RequestParam(required = false, name = "cursor") String cursor,
+            @ParameterObject ProductFilter filter,
+            ServletWebRequest request
+    ) throws IOException {
+        String eTag = productVersionService.catalogETag();
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CacheControl.noCache()).build();
+        }
+        if ((cursor == null || cursor.isEmpty()) && productFacetService.handles(filter, sort)) {
+            PagedResponse<ProductDto> products = productFacetService.query(filter, sort, page, size);
+            return ResponseEntity.ok().eTag(eTag).cacheControl(CacheControl.noCache()).body(products);
+        }
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        Optional<Path> snapshot = catalogSnapshotService.find(eTag, page, size, sort, cursor, gzip);
+        if (snapshot.isPresent()) {
+            sendSnapshot(snapshot.get(), gzip, eTag, request);
+            return null;
+        }
+        PagedResponse<ProductDto> products = productService.getProducts(page, size, sort, cursor);
+        return ResponseEntity.ok().eTag(eTag).cacheControl(CacheControl.noCache()).body(products);
+    }
+
+    @GetMapping(params = "ids")
+    @Operation(
+            summary = "Get several products by id",
+            description = "Resolves a comma-separated list of ids in one request, keeping their order. There is no need to be authenticated to get products.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Products found, and the ids that match no product"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            }
+    )
+    public ResponseEntity<ProductLookupResponse> getByIds(
+            @Parameter(description = "IDs of the products to be retrieved", required = true)
+            @RequestParam(name = "ids") List<Long> ids) {
+        ProductLookupResponse products = productService.lookup(ids);
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+    @PostMapping("/lookup")
+    @Operation(
+            summary = "Get several products by id",
+            description = "Same as GET /api/products?ids=, with the ids in a JSON array body for lists too long for a URL.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Products found, and the ids that match no product"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            }
+    )
+    public ResponseEntity<ProductLookupResponse> lookup(@RequestBody List<Long> ids) {
+        ProductLookupResponse products = productService.lookup(ids);
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
 
+    @GetMapping("/search")
+    @Operation(
+            summary = "Search products",
+            description = "Full-text search over product names and descriptions, tolerant to small typos. There is no need to be authenticated to search products.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Matching products, best first"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            }
+    )
+    public ResponseEntity<List<ProductDto>> search(
+            @Parameter(description = "Search query", required = true)
+            @RequestParam(name = "q") String query,
+            @RequestParam(required = false, name = "limit", defaultValue = "20") @Min(1) @Max(100) Integer limit) {
+        List<ProductDto> products = productSearchService.search(query, limit);
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+    @GetMapping("/suggest")
+    @Operation(
+            summary = "Suggest search terms",
+            description = "Completes the last word of the query with indexed terms. There is no need to be authenticated to get suggestions.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Completions, most frequent first"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            }
+    )
+    public ResponseEntity<List<String>> suggest(
+            @Parameter(description = "Query being typed", required = true)
+            @RequestParam(name = "q") String query,
+            @RequestParam(required = false, name = "limit", defaultValue = "10") @Min(1) @Max(50) Integer limit) {
+        List<String> suggestions = productSearchService.suggest(query, limit);
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get a product by id",
             description = "There is no need to be authenticated to get a product.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Product found"),
+                    @ApiResponse(responseCode = "304", description = "Product not modified since the ETag in If-None-Match"),
                     @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "404", description = "Product not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             }
     )
     public ResponseEntity<ProductDto> get(
             @Parameter(description = "ID of the product to be retrieved", required = true)
-            @PathVariable long id) {
+            @PathVariable long id,
+            WebRequest request) {
+        String eTag = productVersionService.productETag(id);
+        // Read first, from the cache, so that a missing product is a 404 rather than a tag to revalidate.
         ProductDto product = productService.getProduct(id);
-        return new ResponseEntity<>(product, HttpStatus.OK);
+        productViewService.recordView(id);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).cacheControl(CacheControl.noCache()).body(product);
     }
 
     @PostMapping("/create")
@@ -76,9 +213,8 @@ public class ProductController {
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<ProductDto> create(@Valid @RequestBody ProductDto productDto, Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+    public ResponseEntity<ProductDto> create(@Valid @RequestBody ProductDto productDto, UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to create a product.");
         } else {
             ProductDto createdProduct = productService.create(productDto);
@@ -86,6 +222,47 @@ public class ProductController {
         }
     }
 
+    @PostMapping(value = "/import", consumes = {ProductImportService.CSV, ProductImportService.NDJSON})
+    @Operation(
+            summary = "Import products in bulk",
+            description = "Only an admin can import products. The body is streamed as CSV, with the header name,description,price,stock, "
+                    + "or as NDJSON with one product object per line. Invalid rows are reported and skipped.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Import report, with the line and reason of each rejected row"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<ProductImportReport> importProducts(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body,
+            UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
+            throw new ForbiddenException("You are not allowed to import products.");
+        }
+        ProductImportReport report = productImportService.importProducts(body, contentType);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping("/import")
+    @Operation(
+            summary = "Get the progress of the running imports",
+            description = "Only an admin can follow imports. Lists the rows received, imported and failed so far by each "
+                    + "import still running; its id is also in the final report.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Running imports"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<List<ProductImportProgress>> getRunningImports(UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
+            throw new ForbiddenException("You are not allowed to follow imports.");
+        }
+        return new ResponseEntity<>(productImportService.getRunningImports(), HttpStatus.OK);
+    }
+
     @PutMapping("/{id}")
     @Operation(
             summary = "Update a product by id",
@@ -100,9 +277,8 @@ public class ProductController {
     public ResponseEntity<ProductDto> update(
             @Parameter(description = "ID of the product to be updated", required = true)
             @PathVariable long id,
-            @Valid @RequestBody ProductDto productDto, Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+            @Valid @RequestBody ProductDto productDto, UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to update a product.");
         } else {
             ProductDto updatedProduct = productService.updateProduct(id, productDto);
@@ -123,13 +299,60 @@ public class ProductController {
     public ResponseEntity<Void> delete(
             @Parameter(description = "ID of the product to be deleted", required = true)
             @PathVariable long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+            UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to delete a product.");
         } else {
             productService.deleteProduct(id);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
     }
+
+    /**
+     * Writes a catalog snapshot file as the response body, through Tomcat's sendfile when the connector
+     * supports it, or else with {@link FileChannel#transferTo}, so the file is never copied into the heap.
+     */
+    private static void sendSnapshot(Path file, boolean gzip, String eTag, ServletWebRequest request) throws IOException {
+        HttpServletRequest servletRequest = request.getRequest();
+        HttpServletResponse response = request.getResponse();
+        long length = Files.size(file);
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLengthLong(length);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        if (Boolean.TRUE.equals(servletRequest.getAttribute(SENDFILE_SUPPORT))) {
+            servletRequest.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            servletRequest.setAttribute(SENDFILE_START, 0L);
+            servletRequest.setAttribute(SENDFILE_END, length);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,18 @@
+package org.froome.productservice.mapper;
+
+import org.froome.productservice.model.Product;
+import org.froome.productservice.model.dto.ProductDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+/**
+ * Product conversions, implemented at compile time by MapStruct. Money is immutable and copied by reference.
+ */
+@Mapper(componentModel = "spring")
+public interface ProductMapper {
+
+    ProductDto toDto(Product product);
+
+    @Mapping(target = "updatedAt", ignore = true)
+    Product toEntity(ProductDto productDto);
+}
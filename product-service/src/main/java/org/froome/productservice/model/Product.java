@@ -3,8 +3,13 @@ package org.froome.productservice.model;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_price_id", columnList = "price, id"),
+        @Index(name = "idx_products_updated_at", columnList = "updated_at")
+})
 @Data
 public class Product {
 
@@ -18,10 +23,17 @@ public class Product {
     @Column()
     private String description;
 
-    @Column(nullable = false)
-    private float price;
+    @Column(nullable = false, precision = 10, scale = 2)
+    private Money price;
 
     @Column(nullable = false)
     private int stock;
 
+    /**
+     * Set by the database on every change of the row, including the stock updates of the order service.
+     */
+    @Column(name = "updated_at", insertable = false, updatable = false,
+            columnDefinition = "DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)")
+    private LocalDateTime updatedAt;
+
 }
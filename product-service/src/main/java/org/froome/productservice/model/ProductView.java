@@ -0,0 +1,17 @@
+package org.froome.productservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Table(name = "product_views")
+@Data
+public class ProductView {
+
+    @Id
+    @Column(name = "product_id")
+    private long productId;
+
+    @Column(name = "views", nullable = false)
+    private long views;
+}
@@ -1,5 +1,6 @@
 package org.froome.productservice.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,4 +16,8 @@ public class PagedResponse<T> {
     private int size;
     private long totalElements;
     private int totalPages;
+    private String next;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ProductFacets facets;
 }
@@ -2,7 +2,9 @@ package org.froome.productservice.model.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import lombok.Data;
+import org.froome.productservice.model.Money;
 
 @Data
 public class ProductDto {
@@ -14,8 +16,8 @@ public class ProductDto {
 
     private String description;
 
-    @NotBlank
-    private float price;
+    @NotNull
+    private Money price;
 
     @NotBlank
     private int stock;
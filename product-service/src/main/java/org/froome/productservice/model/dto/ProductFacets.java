@@ -0,0 +1,27 @@
+package org.froome.productservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.froome.productservice.model.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductFacets {
+    private List<PriceBucket> price = new ArrayList<>();
+    private long inStock;
+    private long outOfStock;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class PriceBucket {
+        private Money from;
+        private Money to;
+        private long count;
+    }
+}
@@ -0,0 +1,23 @@
+package org.froome.productservice.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import org.froome.productservice.model.Money;
+
+@Data
+public class ProductFilter {
+    @Schema(description = "Lowest price, inclusive")
+    private Money minPrice;
+
+    @Schema(description = "Highest price, inclusive")
+    private Money maxPrice;
+
+    @Schema(description = "Start of the product name, case-insensitive")
+    private String namePrefix;
+
+    @Schema(description = "Only return products in stock", defaultValue = "true")
+    private boolean inStock = true;
+
+    @Schema(description = "Include the price and availability facet counts of the matching products", defaultValue = "false")
+    private boolean facets;
+}
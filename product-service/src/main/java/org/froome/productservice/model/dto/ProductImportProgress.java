@@ -0,0 +1,16 @@
+package org.froome.productservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductImportProgress {
+    private String id;
+    private long received;
+    private long imported;
+    private long failed;
+    private long elapsedMillis;
+}
@@ -0,0 +1,31 @@
+package org.froome.productservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ProductImportReport {
+    private String id;
+    /**
+     * Updated by the running import, and read meanwhile to report its progress.
+     */
+    private volatile long received;
+    private volatile long imported;
+    private volatile long failed;
+    private long durationMillis;
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowError {
+        private long line;
+        private String message;
+    }
+}
@@ -0,0 +1,15 @@
+package org.froome.productservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductLookupResponse {
+    private List<ProductDto> products;
+    private List<Long> missing;
+}
@@ -1,12 +1,49 @@
 package org.froome.productservice.repository;
 
 import org.froome.productservice.model.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    List<Product> findByStockGreaterThan(int stock);
+    long countByStockGreaterThan(int stock);
+
+    Optional<Product> findTopByOrderByIdDesc();
+
+    List<Product> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    @Query(value = "SELECT NOW(6)", nativeQuery = true)
+    LocalDateTime databaseTime();
+
+    /**
+     * Products whose row changed since the given time, read through the {@code updated_at} index.
+     */
+    @Query(value = "SELECT id, updated_at AS updatedAt FROM products WHERE updated_at >= :since", nativeQuery = true)
+    List<ProductUpdate> findUpdatedSince(@Param("since") LocalDateTime since);
+
+    @Query(value = "SELECT * FROM products WHERE stock > 0 AND id > :id ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Product> findInStockAfterId(@Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM products WHERE stock > 0 AND (price, id) > (:price, :id) ORDER BY price, id LIMIT :limit", nativeQuery = true)
+    List<Product> findInStockAfterPrice(@Param("price") BigDecimal price, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM products WHERE stock > 0 ORDER BY id LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Product> findInStockOrderById(@Param("offset") long offset, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM products WHERE stock > 0 ORDER BY price, id LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Product> findInStockOrderByPrice(@Param("offset") long offset, @Param("limit") int limit);
+
+    interface ProductUpdate {
+        Long getId();
+
+        LocalDateTime getUpdatedAt();
+    }
 }
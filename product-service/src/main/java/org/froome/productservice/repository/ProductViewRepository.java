@@ -0,0 +1,24 @@
+package org.froome.productservice.repository;
+
+import org.froome.productservice.model.ProductView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ProductViewRepository extends JpaRepository<ProductView, Long> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO product_views (product_id, views) VALUES (:productId, :views) " +
+            "ON DUPLICATE KEY UPDATE views = views + VALUES(views)", nativeQuery = true)
+    void addViews(@Param("productId") long productId, @Param("views") long views);
+
+    @Query(value = "SELECT product_id FROM product_views ORDER BY views DESC LIMIT :limit", nativeQuery = true)
+    List<Long> findMostViewedIds(@Param("limit") int limit);
+}
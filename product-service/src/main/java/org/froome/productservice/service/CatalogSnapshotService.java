@@ -0,0 +1,179 @@
+package org.froome.productservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.productservice.mapper.ProductMapper;
+import org.froome.productservice.model.Product;
+import org.froome.productservice.model.dto.PagedResponse;
+import org.froome.productservice.model.dto.ProductDto;
+import org.froome.productservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Materializes the anonymous catalog, i.e. the pages of {@link ProductService#getProducts} sorted by id for the
+ * standard page sizes, into immutable JSON files, each stored as is and gzip-compressed. The files are written
+ * again in the background whenever the catalog ETag moves, and are only served while they match it, so a stale
+ * snapshot falls back to the live path instead of being served.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogSnapshotService {
+
+    private static final int READ_CHUNK = 1000;
+
+    private final ProductRepository productRepository;
+    private final ProductVersionService productVersionService;
+    private final ProductMapper productMapper;
+    private final ObjectMapper objectMapper;
+
+    @Value("${products.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${products.snapshot.directory:${java.io.tmpdir}/froome-catalog}")
+    private Path directory;
+
+    @Value("${products.snapshot.page-sizes:10,20,50,100}")
+    private List<Integer> pageSizes;
+
+    @Value("${products.snapshot.max-pages:1000}")
+    private int maxPages;
+
+    private volatile Snapshot current;
+    private Snapshot previous;
+    private long generation;
+
+    /**
+     * Returns the snapshot file of the requested page if the current snapshot was taken at this catalog ETag.
+     * A cursor is only honoured if it points at a page boundary of the snapshot itself.
+     */
+    public Optional<Path> find(String eTag, int page, int size, String sort, String cursor, boolean gzip) {
+        Snapshot snapshot = current;
+        if (snapshot == null || !snapshot.eTag().equals(eTag)) {
+            return Optional.empty();
+        }
+        long[] lastIds = snapshot.lastIds().get(size);
+        if (lastIds == null) {
+            return Optional.empty();
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            ProductCursor after = ProductCursor.decode(cursor);
+            if (!ProductService.SORT_BY_ID.equals(after.sort()) || after.page() < 0 || after.page() >= lastIds.length
+                    || lastIds[after.page()] != after.id()) {
+                return Optional.empty();
+            }
+            page = after.page() + 1;
+        } else if (!ProductService.SORT_BY_ID.equals(sort)) {
+            return Optional.empty();
+        }
+        if (page < 0 || page >= snapshot.pageCounts().get(size)) {
+            return Optional.empty();
+        }
+        return Optional.of(file(snapshot.directory(), size, page, gzip));
+    }
+
+    @Scheduled(fixedDelayString = "${products.snapshot.refresh-millis:5000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        String eTag = productVersionService.catalogETag();
+        if (current != null && current.eTag().equals(eTag)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Path target = directory.resolve(Long.toString(++generation));
+        try {
+            if (generation == 1) {
+                // Snapshots left over by a previous run are never served again.
+                FileSystemUtils.deleteRecursively(directory);
+            }
+            Snapshot snapshot = write(eTag, target);
+            Snapshot obsolete = previous;
+            previous = current;
+            current = snapshot;
+            // The previous generation is kept until the next one, for the responses still sending it.
+            if (obsolete != null) {
+                FileSystemUtils.deleteRecursively(obsolete.directory());
+            }
+            log.info("Wrote catalog snapshot {} in {} ms", target, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("Could not write catalog snapshot {}", target, e);
+            try {
+                FileSystemUtils.deleteRecursively(target);
+            } catch (IOException ignored) {
+                // Left for the next cleanup.
+            }
+        }
+    }
+
+    private Snapshot write(String eTag, Path target) throws IOException {
+        List<ProductDto> products = new ArrayList<>();
+        long lastId = 0;
+        List<Product> rows;
+        do {
+            rows = productRepository.findInStockAfterId(lastId, READ_CHUNK);
+            for (Product product : rows) {
+                products.add(productMapper.toDto(product));
+                lastId = product.getId();
+            }
+        } while (rows.size() == READ_CHUNK);
+
+        Map<Integer, long[]> lastIds = new HashMap<>();
+        Map<Integer, Integer> pageCounts = new HashMap<>();
+        int total = products.size();
+        for (int size : pageSizes) {
+            int totalPages = (int) Math.ceil((double) total / size);
+            int pageCount = Math.min(Math.max(1, totalPages), maxPages);
+            long[] boundaries = new long[pageCount];
+            Files.createDirectories(target.resolve(Integer.toString(size)));
+            for (int page = 0; page < pageCount; page++) {
+                int from = Math.min(page * size, total);
+                int to = Math.min(from + size, total);
+                List<ProductDto> content = products.subList(from, to);
+                boundaries[page] = content.isEmpty() ? 0 : content.get(content.size() - 1).getId();
+                String next = to < total
+                        ? new ProductCursor(ProductService.SORT_BY_ID, page, boundaries[page], null).encode()
+                        : null;
+                byte[] json = objectMapper.writeValueAsBytes(new PagedResponse<>(content, page, size, total, totalPages, next, null));
+                writeAtomically(file(target, size, page, false), json, false);
+                writeAtomically(file(target, size, page, true), json, true);
+            }
+            lastIds.put(size, boundaries);
+            pageCounts.put(size, pageCount);
+        }
+        return new Snapshot(eTag, target, lastIds, pageCounts);
+    }
+
+    private static void writeAtomically(Path file, byte[] content, boolean gzip) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = gzip ? new GZIPOutputStream(Files.newOutputStream(temporary)) : Files.newOutputStream(temporary)) {
+            out.write(content);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path file(Path snapshotDirectory, int size, int page, boolean gzip) {
+        return snapshotDirectory.resolve(Integer.toString(size)).resolve(page + (gzip ? ".json.gz" : ".json"));
+    }
+
+    private record Snapshot(String eTag, Path directory, Map<Integer, long[]> lastIds, Map<Integer, Integer> pageCounts) {
+    }
+}
@@ -0,0 +1,41 @@
+package org.froome.productservice.service;
+
+import org.froome.productservice.exception.BadRequestException;
+import org.froome.productservice.model.Product;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last product of a catalog page, handed to clients as an opaque string.
+ * The price is kept as the decimal the column stores, so that the seek predicate compares exact values.
+ */
+record ProductCursor(String sort, int page, long id, BigDecimal price) {
+
+    static ProductCursor after(String sort, int page, Product last) {
+        BigDecimal price = ProductService.SORT_BY_PRICE.equals(sort) ? last.getPrice().toBigDecimal() : null;
+        return new ProductCursor(sort, page, last.getId(), price);
+    }
+
+    String encode() {
+        String value = sort + ":" + page + ":" + id + (price != null ? ":" + price.toPlainString() : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ProductCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            String sort = parts[0];
+            if (ProductService.SORT_BY_ID.equals(sort) && parts.length == 3) {
+                return new ProductCursor(sort, Integer.parseInt(parts[1]), Long.parseLong(parts[2]), null);
+            }
+            if (ProductService.SORT_BY_PRICE.equals(sort) && parts.length == 4) {
+                return new ProductCursor(sort, Integer.parseInt(parts[1]), Long.parseLong(parts[2]), new BigDecimal(parts[3]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the bad request below.
+        }
+        throw new BadRequestException("Invalid cursor");
+    }
+}
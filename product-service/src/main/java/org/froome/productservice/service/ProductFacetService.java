@@ -0,0 +1,367 @@
+package org.froome.productservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.froome.productservice.exception.BadRequestException;
+import org.froome.productservice.mapper.ProductMapper;
+import org.froome.productservice.model.Money;
+import org.froome.productservice.model.Product;
+import org.froome.productservice.model.dto.PagedResponse;
+import org.froome.productservice.model.dto.ProductDto;
+import org.froome.productservice.model.dto.ProductFacets;
+import org.froome.productservice.model.dto.ProductFilter;
+import org.froome.productservice.repository.ProductRepository;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Bitmap indexes over the catalog, answering filtered and sorted catalog pages and their facet counts in memory.
+ * <p>
+ * Every product gets a dense document number, and availability, price buckets and names each map to compressed
+ * bitmaps of those numbers. Combined filters are bitmap intersections and facet counts are intersection
+ * cardinalities, so neither a filtered query nor a filesort ever reaches the database. Sort orders are arrays of
+ * document numbers, sorted again lazily after writes. Like {@link ProductSearchService}, the index is loaded at
+ * startup and kept up to date by {@link ProductService}; the products whose stock the order service changed in the
+ * database are read again one by one from the {@link ProductsChangedEvent}s of {@link ProductVersionService}.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductFacetService {
+
+    static final String SORT_BY_PRICE_DESC = "-price";
+    static final String SORT_BY_NAME = "name";
+    static final String SORT_BY_NAME_DESC = "-name";
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Comparator<IndexedProduct> BY_ID = Comparator.comparingLong(product -> product.dto().getId());
+    private static final Comparator<IndexedProduct> BY_PRICE =
+            Comparator.comparingLong((IndexedProduct product) -> product.dto().getPrice().minorUnits()).thenComparing(BY_ID);
+    private static final Comparator<IndexedProduct> BY_NAME =
+            Comparator.comparing(IndexedProduct::nameKey).thenComparing(BY_ID);
+
+    private final ProductRepository productRepository;
+    private final ProductMapper productMapper;
+
+    /**
+     * Upper bounds of the price buckets; the last bucket is open-ended.
+     */
+    @Value("${products.facets.price-buckets:10,25,50,100,250,500,1000}")
+    private Money[] bucketBounds;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> documents = new HashMap<>();
+    private final List<IndexedProduct> products = new ArrayList<>();
+    private final RoaringBitmap live = new RoaringBitmap();
+    private final RoaringBitmap inStock = new RoaringBitmap();
+    private final NavigableMap<String, RoaringBitmap> names = new TreeMap<>();
+    private long[] priceBounds;
+    private RoaringBitmap[] priceBuckets;
+    private int[] byId = new int[0];
+    private int[] byPrice = new int[0];
+    private int[] byName = new int[0];
+    private boolean ordersStale;
+
+    /**
+     * Builds the index from the catalog, read under the write lock so that no write indexed meanwhile is
+     * overwritten by the older snapshot.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            List<Product> all = productRepository.findAll(Sort.by(ProductService.SORT_BY_ID));
+            priceBounds = Arrays.stream(bucketBounds).mapToLong(Money::minorUnits).sorted().toArray();
+            documents.clear();
+            products.clear();
+            live.clear();
+            inStock.clear();
+            names.clear();
+            priceBuckets = new RoaringBitmap[priceBounds.length + 1];
+            for (int i = 0; i < priceBuckets.length; i++) {
+                priceBuckets[i] = new RoaringBitmap();
+            }
+            all.forEach(this::add);
+
+            live.runOptimize();
+            inStock.runOptimize();
+            for (RoaringBitmap bucket : priceBuckets) {
+                bucket.runOptimize();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads again only the products changed by another service. They are read under the write lock, like
+     * the catalog in {@link #load}, so that a concurrent local write always lands after them.
+     */
+    @EventListener
+    public void reindex(ProductsChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (priceBuckets == null) {
+                return;
+            }
+            Set<Long> missing = new HashSet<>(event.ids());
+            for (Product product : productRepository.findAllById(event.ids())) {
+                missing.remove(product.getId());
+                add(product);
+            }
+            missing.forEach(id -> {
+                Integer document = documents.remove(id);
+                if (document != null) {
+                    unindex(document);
+                    ordersStale = true;
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void index(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (priceBuckets != null) {
+                add(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer document = documents.remove(id);
+            if (document != null) {
+                unindex(document);
+                ordersStale = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a catalog request needs the index: it filters on anything but stock, sorts in an order the
+     * keyset queries do not cover, or asks for facets. Other requests keep to the cached and snapshot pages.
+     */
+    public boolean handles(ProductFilter filter, String sort) {
+        return filter.getMinPrice() != null
+                || filter.getMaxPrice() != null
+                || (filter.getNamePrefix() != null && !filter.getNamePrefix().isBlank())
+                || !filter.isInStock()
+                || filter.isFacets()
+                || !(ProductService.SORT_BY_ID.equals(sort) || ProductService.SORT_BY_PRICE.equals(sort));
+    }
+
+    /**
+     * Reads one page of the products matching the filter. Facets are counted over the matches of the other
+     * filters, so that the price counts do not collapse to the selected range, nor availability to in stock.
+     */
+    public PagedResponse<ProductDto> query(ProductFilter filter, String sort, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new BadRequestException("Page must be positive and size greater than zero");
+        }
+        long minPrice = filter.getMinPrice() != null ? filter.getMinPrice().minorUnits() : Long.MIN_VALUE;
+        long maxPrice = filter.getMaxPrice() != null ? filter.getMaxPrice().minorUnits() : Long.MAX_VALUE;
+        if (minPrice > maxPrice) {
+            throw new BadRequestException("The minimum price must not exceed the maximum price");
+        }
+
+        lock.readLock().lock();
+        if (ordersStale) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                if (ordersStale) {
+                    sortOrders();
+                }
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        try {
+            if (priceBuckets == null) {
+                throw new IllegalStateException("The product index is not loaded yet");
+            }
+            int[] order = orderOf(sort);
+            boolean descending = sort.startsWith("-");
+
+            RoaringBitmap candidates = live;
+            if (filter.getNamePrefix() != null && !filter.getNamePrefix().isBlank()) {
+                String prefix = normalize(filter.getNamePrefix().trim());
+                candidates = RoaringBitmap.and(live,
+                        RoaringBitmap.or(names.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().iterator()));
+            }
+            boolean priceFiltered = filter.getMinPrice() != null || filter.getMaxPrice() != null;
+            RoaringBitmap inPriceRange = priceFiltered ? RoaringBitmap.and(candidates, priceRange(minPrice, maxPrice)) : candidates;
+            RoaringBitmap matching = filter.isInStock() ? RoaringBitmap.and(inPriceRange, inStock) : inPriceRange;
+
+            int total = matching.getCardinality();
+            long offset = (long) page * size;
+            List<ProductDto> content = new ArrayList<>(Math.min(size, total));
+            long skipped = 0;
+            for (int n = 0; n < order.length && content.size() < size && offset < total; n++) {
+                int document = order[descending ? order.length - 1 - n : n];
+                if (matching.contains(document) && skipped++ >= offset) {
+                    content.add(products.get(document).dto());
+                }
+            }
+
+            ProductFacets facets = null;
+            if (filter.isFacets()) {
+                RoaringBitmap available = filter.isInStock() ? RoaringBitmap.and(candidates, inStock) : candidates;
+                facets = new ProductFacets();
+                for (int i = 0; i < priceBuckets.length; i++) {
+                    facets.getPrice().add(new ProductFacets.PriceBucket(
+                            i == 0 ? Money.ZERO : new Money(priceBounds[i - 1]),
+                            i < priceBounds.length ? new Money(priceBounds[i]) : null,
+                            RoaringBitmap.andCardinality(available, priceBuckets[i])));
+                }
+                long inStockCount = RoaringBitmap.andCardinality(inPriceRange, inStock);
+                facets.setInStock(inStockCount);
+                facets.setOutOfStock(inPriceRange.getCardinality() - inStockCount);
+            }
+
+            return new PagedResponse<>(content, page, size, total, (int) Math.ceil((double) total / size), null, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Product product) {
+        Integer document = documents.get(product.getId());
+        IndexedProduct previous = null;
+        if (document != null) {
+            previous = products.get(document);
+            unindex(document);
+        } else {
+            document = products.size();
+            products.add(null);
+            documents.put(product.getId(), document);
+        }
+
+        ProductDto dto = productMapper.toDto(product);
+        IndexedProduct indexed = new IndexedProduct(dto, normalize(dto.getName()), bucketOf(dto.getPrice().minorUnits()));
+        products.set(document, indexed);
+        live.add(document);
+        if (dto.getStock() > 0) {
+            inStock.add(document);
+        }
+        priceBuckets[indexed.bucket()].add(document);
+        names.computeIfAbsent(indexed.nameKey(), key -> new RoaringBitmap()).add(document);
+        // A change of stock alone keeps the document in place in every sort order.
+        if (previous == null || !previous.nameKey().equals(indexed.nameKey())
+                || previous.dto().getPrice().minorUnits() != dto.getPrice().minorUnits()) {
+            ordersStale = true;
+        }
+    }
+
+    /**
+     * Clears a document from every bitmap. Its number is not reused until the next reload compacts them.
+     */
+    private void unindex(int document) {
+        IndexedProduct indexed = products.set(document, null);
+        if (indexed == null) {
+            return;
+        }
+        live.remove(document);
+        inStock.remove(document);
+        priceBuckets[indexed.bucket()].remove(document);
+        RoaringBitmap named = names.get(indexed.nameKey());
+        if (named != null) {
+            named.remove(document);
+            if (named.isEmpty()) {
+                names.remove(indexed.nameKey());
+            }
+        }
+    }
+
+    /**
+     * Documents priced within the range: whole buckets inside it are taken as they are, and only the
+     * documents of the buckets straddling a bound are compared one by one.
+     */
+    private RoaringBitmap priceRange(long minPrice, long maxPrice) {
+        RoaringBitmap range = new RoaringBitmap();
+        for (int i = 0; i < priceBuckets.length; i++) {
+            long lower = i == 0 ? Long.MIN_VALUE : priceBounds[i - 1];
+            long upper = i < priceBounds.length ? priceBounds[i] : Long.MAX_VALUE;
+            if (upper <= minPrice || lower > maxPrice) {
+                continue;
+            }
+            if (lower >= minPrice && upper <= maxPrice) {
+                range.or(priceBuckets[i]);
+            } else {
+                priceBuckets[i].forEach((int document) -> {
+                    long price = products.get(document).dto().getPrice().minorUnits();
+                    if (price >= minPrice && price <= maxPrice) {
+                        range.add(document);
+                    }
+                });
+            }
+        }
+        return range;
+    }
+
+    private int[] orderOf(String sort) {
+        return switch (sort) {
+            case ProductService.SORT_BY_ID -> byId;
+            case ProductService.SORT_BY_PRICE, SORT_BY_PRICE_DESC -> byPrice;
+            case SORT_BY_NAME, SORT_BY_NAME_DESC -> byName;
+            default -> throw new BadRequestException("Sort must be one of: " + String.join(", ", ProductService.SORT_BY_ID,
+                    ProductService.SORT_BY_PRICE, SORT_BY_PRICE_DESC, SORT_BY_NAME, SORT_BY_NAME_DESC));
+        };
+    }
+
+    private void sortOrders() {
+        byId = sorted(BY_ID);
+        byPrice = sorted(BY_PRICE);
+        byName = sorted(BY_NAME);
+        ordersStale = false;
+    }
+
+    private int[] sorted(Comparator<IndexedProduct> comparator) {
+        return Arrays.stream(live.toArray())
+                .boxed()
+                .sorted((a, b) -> comparator.compare(products.get(a), products.get(b)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private int bucketOf(long price) {
+        int bucket = Arrays.binarySearch(priceBounds, price);
+        return bucket >= 0 ? bucket + 1 : -bucket - 1;
+    }
+
+    private static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        return DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private record IndexedProduct(ProductDto dto, String nameKey, int bucket) {
+    }
+}
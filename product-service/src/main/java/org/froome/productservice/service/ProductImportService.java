@@ -0,0 +1,316 @@
+package org.froome.productservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.productservice.config.CacheConfig;
+import org.froome.productservice.exception.BadRequestException;
+import org.froome.productservice.model.Money;
+import org.froome.productservice.model.Product;
+import org.froome.productservice.model.dto.ProductImportProgress;
+import org.froome.productservice.model.dto.ProductImportReport;
+import org.froome.productservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Imports products from a CSV or NDJSON stream. Rows are validated as they are read and inserted with
+ * JDBC batches, one transaction per chunk, so a bad row is only reported and a failing chunk does not
+ * undo the chunks already written. The stream is never held in memory as a whole.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImportService {
+
+    public static final String CSV = "text/csv";
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final String INSERT = "INSERT INTO products (name, description, price, stock) VALUES (?, ?, ?, ?)";
+    private static final List<String> CSV_HEADER = List.of("name", "description", "price", "stock");
+    private static final Money MAX_PRICE = Money.valueOf("99999999.99");
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_RECORD_LENGTH = 4 * MAX_TEXT_LENGTH + 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductRepository productRepository;
+    private final ProductSearchService productSearchService;
+    private final ProductFacetService productFacetService;
+    private final ProductVersionService productVersionService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${products.import.chunk-size:1000}")
+    private int chunkSize;
+
+    private final Map<String, Running> running = new ConcurrentHashMap<>();
+
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    public ProductImportReport importProducts(InputStream body, String contentType) {
+        boolean csv = contentType != null && contentType.startsWith(CSV);
+        if (!csv && (contentType == null || !contentType.startsWith(NDJSON))) {
+            throw new BadRequestException("Content type must be " + CSV + " or " + NDJSON);
+        }
+
+        long start = System.currentTimeMillis();
+        long lastIdBefore = productRepository.findTopByOrderByIdDesc().map(Product::getId).orElse(0L);
+        ProductImportReport report = new ProductImportReport();
+        report.setId(UUID.randomUUID().toString());
+        running.put(report.getId(), new Running(report, start));
+        List<Object[]> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            if (csv) {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null || !isCsvHeader(stripBom(line))) {
+                    throw new BadRequestException("The first line must be the header " + String.join(",", CSV_HEADER));
+                }
+            }
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                long recordLine = lineNumber;
+                report.setReceived(report.getReceived() + 1);
+                try {
+                    if (csv) {
+                        // A quoted field may hold line breaks: the record goes on until its quotes are balanced.
+                        StringBuilder record = new StringBuilder(line);
+                        int quotes = countQuotes(line);
+                        while (quotes % 2 == 1 && record.length() <= MAX_RECORD_LENGTH && (line = reader.readLine()) != null) {
+                            lineNumber++;
+                            record.append('\n').append(line);
+                            quotes += countQuotes(line);
+                        }
+                        if (record.length() > MAX_RECORD_LENGTH) {
+                            throw new IllegalArgumentException("Record is longer than " + MAX_RECORD_LENGTH + " characters");
+                        }
+                        chunk.add(fromCsv(record.toString()));
+                    } else {
+                        chunk.add(fromJson(lineNumber == 1 ? stripBom(line) : line));
+                    }
+                    chunkLines.add(recordLine);
+                } catch (IllegalArgumentException e) {
+                    reject(report, recordLine, e.getMessage());
+                }
+                if (chunk.size() >= chunkSize) {
+                    flush(chunk, chunkLines, report);
+                }
+            }
+            flush(chunk, chunkLines, report);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.remove(report.getId());
+            if (report.getImported() > 0) {
+                reindexFrom(lastIdBefore);
+            }
+        }
+
+        report.setDurationMillis(System.currentTimeMillis() - start);
+        log.info("Imported {} of {} products in {} ms", report.getImported(), report.getReceived(), report.getDurationMillis());
+        return report;
+    }
+
+    /**
+     * Counts of the imports still running, updated after every row and chunk, for the admins to follow a long import.
+     */
+    public List<ProductImportProgress> getRunningImports() {
+        long now = System.currentTimeMillis();
+        return running.values().stream()
+                .map(entry -> new ProductImportProgress(entry.report().getId(), entry.report().getReceived(),
+                        entry.report().getImported(), entry.report().getFailed(), now - entry.start()))
+                .toList();
+    }
+
+    private void flush(List<Object[]> chunk, List<Long> chunkLines, ProductImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, chunk));
+            report.setImported(report.getImported() + chunk.size());
+            log.debug("Product import progress: {} imported, {} failed", report.getImported(), report.getFailed());
+        } catch (DataAccessException e) {
+            String message = "Chunk rolled back: " + e.getMostSpecificCause().getMessage();
+            chunkLines.forEach(line -> reject(report, line, message));
+        }
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    /**
+     * Adds the imported products to the search and facet indexes and bumps the catalog version, in pages of one chunk.
+     */
+    private void reindexFrom(long lastIdBefore) {
+        long lastId = lastIdBefore;
+        List<Product> products;
+        do {
+            products = productRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, chunkSize));
+            for (Product product : products) {
+                productSearchService.index(product);
+                productFacetService.index(product);
+                lastId = product.getId();
+            }
+        } while (products.size() == chunkSize);
+        productVersionService.catalogChanged();
+    }
+
+    private static void reject(ProductImportReport report, long line, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new ProductImportReport.RowError(line, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static boolean isCsvHeader(String line) {
+        try {
+            return CSV_HEADER.equals(parseCsvLine(line).stream().map(field -> field.trim().toLowerCase()).toList());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static Object[] fromCsv(String line) {
+        List<String> fields = parseCsvLine(line);
+        if (fields.size() != CSV_HEADER.size()) {
+            throw new IllegalArgumentException("Expected " + CSV_HEADER.size() + " fields but found " + fields.size());
+        }
+        return validate(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+    }
+
+    private Object[] fromJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Each line must be a JSON object");
+        }
+        return validate(text(node, "name"), text(node, "description"), text(node, "price"), text(node, "stock"));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Object[] validate(String name, String description, String price, String stock) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("name is required");
+        }
+        if (name.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("name is longer than " + MAX_TEXT_LENGTH + " characters");
+        }
+        if (description != null && description.isEmpty()) {
+            description = null;
+        }
+        if (description != null && description.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("description is longer than " + MAX_TEXT_LENGTH + " characters");
+        }
+
+        if (price == null || stock == null) {
+            throw new IllegalArgumentException("price and stock are required");
+        }
+        Money parsedPrice;
+        int parsedStock;
+        try {
+            // Rejects the prices with more than two decimals, as the product API does, rather than rounding them.
+            parsedPrice = Money.valueOf(price);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("price must be a decimal number");
+        }
+        try {
+            parsedStock = Integer.parseInt(stock.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("stock must be an integer");
+        }
+        if (parsedPrice.isNegative() || parsedPrice.compareTo(MAX_PRICE) > 0) {
+            throw new IllegalArgumentException("price must be between 0 and " + MAX_PRICE);
+        }
+        if (parsedStock < 0) {
+            throw new IllegalArgumentException("stock must not be negative");
+        }
+        return new Object[]{name.trim(), description, parsedPrice.toBigDecimal(), parsedStock};
+    }
+
+    private static int countQuotes(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Splits one CSV record, with RFC 4180 quoting: quoted fields may contain commas, doubled quotes and line breaks.
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private record Running(ProductImportReport report, long start) {
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+}
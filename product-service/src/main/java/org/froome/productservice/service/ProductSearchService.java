@@ -0,0 +1,245 @@
+package org.froome.productservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.froome.productservice.mapper.ProductMapper;
+import org.froome.productservice.model.Product;
+import org.froome.productservice.model.dto.ProductDto;
+import org.froome.productservice.repository.ProductRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index over product names and descriptions.
+ * <p>
+ * Terms are kept in a sorted map, so the completions of a prefix are a contiguous range of it. Query terms
+ * without an exact match are also matched against the terms within a small edit distance, and results are
+ * ranked with BM25, names weighing twice as much as descriptions. The index is loaded once at startup and
+ * then kept up to date by {@link ProductService} on every write, and by the {@link ProductsChangedEvent}s of
+ * the stock changed by the order service.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductSearchService {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final float NAME_WEIGHT = 2f;
+    private static final float PREFIX_WEIGHT = 0.8f;
+    private static final float FUZZY_WEIGHT = 0.5f;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ProductRepository productRepository;
+    private final ProductMapper productMapper;
+
+    private final NavigableMap<String, Map<Long, Float>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Long, IndexedProduct> products = new ConcurrentHashMap<>();
+    private volatile double totalLength;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        productRepository.findAll().forEach(this::index);
+    }
+
+    /**
+     * Reads again the products changed by another service, so that their stock, and with it the in-stock
+     * filter of the search, follows the database.
+     */
+    @EventListener
+    public synchronized void reindex(ProductsChangedEvent event) {
+        Set<Long> missing = new HashSet<>(event.ids());
+        for (Product product : productRepository.findAllById(event.ids())) {
+            missing.remove(product.getId());
+            index(product);
+        }
+        missing.forEach(this::remove);
+    }
+
+    public synchronized void index(Product product) {
+        remove(product.getId());
+
+        Map<String, Float> frequencies = new HashMap<>();
+        List<String> nameTerms = tokenize(product.getName());
+        List<String> descriptionTerms = tokenize(product.getDescription());
+        nameTerms.forEach(term -> frequencies.merge(term, NAME_WEIGHT, Float::sum));
+        descriptionTerms.forEach(term -> frequencies.merge(term, 1f, Float::sum));
+
+        int length = nameTerms.size() + descriptionTerms.size();
+        products.put(product.getId(), new IndexedProduct(productMapper.toDto(product), frequencies.keySet(), length));
+        frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new ConcurrentHashMap<>()).put(product.getId(), frequency));
+        totalLength += length;
+    }
+
+    public synchronized void remove(long id) {
+        IndexedProduct removed = products.remove(id);
+        if (removed == null) {
+            return;
+        }
+        for (String term : removed.terms()) {
+            Map<Long, Float> documents = postings.get(term);
+            if (documents != null) {
+                documents.remove(id);
+                if (documents.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalLength -= removed.length();
+    }
+
+    /**
+     * Returns the in-stock products matching every term of the query, best first. The last term also
+     * matches as a prefix, so that results follow the user while typing.
+     */
+    public List<ProductDto> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || products.isEmpty()) {
+            return List.of();
+        }
+
+        double averageLength = Math.max(1, totalLength / products.size());
+        Map<Long, Double> scores = null;
+        for (int i = 0; i < terms.size(); i++) {
+            Map<Long, Double> termScores = score(expand(terms.get(i), i == terms.size() - 1), averageLength);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((id, score) -> score + termScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                .map(entry -> products.get(entry.getKey()))
+                .filter(product -> product != null && product.dto().getStock() > 0)
+                .limit(limit)
+                .map(IndexedProduct::dto)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Completes the last term of the query with the indexed terms it prefixes, most frequent first.
+     */
+    public List<String> suggest(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        String prefix = terms.get(terms.size() - 1);
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Map<Long, Float>> entry) -> entry.getValue().size()).reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Index terms the query term stands for, with the weight of each kind of match.
+     */
+    private Map<String, Float> expand(String term, boolean prefix) {
+        Map<String, Float> expansions = new HashMap<>();
+        if (postings.containsKey(term)) {
+            expansions.put(term, 1f);
+        }
+        if (prefix) {
+            postings.subMap(term, false, term + Character.MAX_VALUE, false).keySet()
+                    .forEach(completion -> expansions.putIfAbsent(completion, PREFIX_WEIGHT));
+        }
+        int maxDistance = term.length() >= 8 ? 2 : term.length() >= 4 ? 1 : 0;
+        if (expansions.isEmpty() && maxDistance > 0) {
+            // Typos rarely hit the first letter, which keeps the candidates to a slice of the vocabulary.
+            String first = term.substring(0, 1);
+            for (String candidate : postings.subMap(first, true, first + Character.MAX_VALUE, false).keySet()) {
+                if (Math.abs(candidate.length() - term.length()) <= maxDistance
+                        && editDistance(term, candidate, maxDistance) <= maxDistance) {
+                    expansions.put(candidate, FUZZY_WEIGHT);
+                }
+            }
+        }
+        return expansions;
+    }
+
+    private Map<Long, Double> score(Map<String, Float> expansions, double averageLength) {
+        Map<Long, Double> scores = new HashMap<>();
+        int documentCount = products.size();
+        expansions.forEach((term, weight) -> {
+            Map<Long, Float> documents = postings.get(term);
+            if (documents == null) {
+                return;
+            }
+            double idf = Math.log(1 + (documentCount - documents.size() + 0.5) / (documents.size() + 0.5));
+            documents.forEach((id, frequency) -> {
+                IndexedProduct product = products.get(id);
+                int length = product != null ? product.length() : 0;
+                double tf = frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+                scores.merge(id, weight * idf * tf, Math::max);
+            });
+        });
+        return scores;
+    }
+
+    /**
+     * Levenshtein distance, abandoned as soon as a whole row exceeds the maximum.
+     */
+    private static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String term : SEPARATORS.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private record IndexedProduct(ProductDto dto, Set<String> terms, int length) {
+    }
+}
@@ -1,59 +1,177 @@
 package org.froome.productservice.service;
 
+import org.froome.productservice.config.CacheConfig;
+import org.froome.productservice.exception.BadRequestException;
 import org.froome.productservice.exception.NotFoundException;
+import org.froome.productservice.mapper.ProductMapper;
 import org.froome.productservice.model.Product;
 import org.froome.productservice.model.dto.PagedResponse;
+import org.froome.productservice.model.dto.ProductLookupResponse;
 import org.froome.productservice.model.dto.ProductDto;
 import org.froome.productservice.repository.ProductRepository;
+import org.froome.productservice.repository.ProductViewRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
+    static final String SORT_BY_ID = "id";
+    static final String SORT_BY_PRICE = "price";
+    static final int MAX_LOOKUP_SIZE = 1000;
+
     private final ProductRepository productRepository;
-    private final ModelMapper modelMapper;
+    private final ProductViewRepository productViewRepository;
+    private final ProductSearchService productSearchService;
+    private final ProductFacetService productFacetService;
+    private final ProductVersionService productVersionService;
+    private final ProductMapper productMapper;
+    private final CacheManager cacheManager;
+
+    private volatile long inStockCount = -1;
 
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
     public ProductDto create(ProductDto productDto) {
-        Product product = modelMapper.map(productDto, Product.class);
+        Product product = productMapper.toEntity(productDto);
         Product savedProduct = productRepository.save(product);
-        return modelMapper.map(savedProduct, ProductDto.class);
+        productSearchService.index(savedProduct);
+        productFacetService.index(savedProduct);
+        productVersionService.productChanged(savedProduct.getId());
+        return productMapper.toDto(savedProduct);
     }
 
-    public PagedResponse<ProductDto> getProducts(int page, int size) {
-        List<Product> allProductsInStock = productRepository.findByStockGreaterThan(0);
-
-        int totalElements = allProductsInStock.size();
-        int totalPages = (int) Math.ceil((double) totalElements / size);
+    /**
+     * Reads one catalog page of in-stock products. A cursor from a previous page seeks past its last row,
+     * so the cost of a page only depends on its size; without one, the page number is used as an offset.
+     */
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_PAGES, key = "{#page, #size, #sort, #cursor}", sync = true)
+    public PagedResponse<ProductDto> getProducts(int page, int size, String sort, String cursor) {
+        if (page < 0 || size < 1) {
+            throw new BadRequestException("Page must be positive and size greater than zero");
+        }
 
-        int fromIndex = page * size;
-        int toIndex = Math.min(fromIndex + size, totalElements);
-        List<Product> paginatedProducts = allProductsInStock.subList(fromIndex, toIndex);
+        List<Product> rows;
+        if (cursor != null && !cursor.isEmpty()) {
+            ProductCursor after = ProductCursor.decode(cursor);
+            sort = after.sort();
+            page = after.page() + 1;
+            rows = SORT_BY_PRICE.equals(sort)
+                    ? productRepository.findInStockAfterPrice(after.price(), after.id(), size + 1)
+                    : productRepository.findInStockAfterId(after.id(), size + 1);
+        } else if (SORT_BY_PRICE.equals(sort)) {
+            rows = productRepository.findInStockOrderByPrice((long) page * size, size + 1);
+        } else if (SORT_BY_ID.equals(sort)) {
+            rows = productRepository.findInStockOrderById((long) page * size, size + 1);
+        } else {
+            throw new BadRequestException("Sort must be one of: " + SORT_BY_ID + ", " + SORT_BY_PRICE);
+        }
 
-        List<ProductDto> products = paginatedProducts.stream()
-                .map(product -> modelMapper.map(product, ProductDto.class))
+        boolean hasNext = rows.size() > size;
+        List<Product> pageRows = hasNext ? rows.subList(0, size) : rows;
+        List<ProductDto> products = pageRows.stream()
+                .map(product -> productMapper.toDto(product))
                 .collect(Collectors.toList());
 
+        long totalElements = countInStock();
         return new PagedResponse<>(
                 products,
                 page,
                 size,
                 totalElements,
-                totalPages
+                (int) Math.ceil((double) totalElements / size),
+                hasNext ? ProductCursor.after(sort, page, pageRows.get(pageRows.size() - 1)).encode() : null,
+                null
         );
     }
 
+    /**
+     * Number of in-stock products, refreshed in the background rather than counted for every page.
+     */
+    public long countInStock() {
+        long count = inStockCount;
+        if (count < 0) {
+            refreshInStockCount();
+            count = inStockCount;
+        }
+        return count;
+    }
+
+    @Scheduled(fixedDelayString = "${products.count.refresh-millis:30000}")
+    public void refreshInStockCount() {
+        inStockCount = productRepository.countByStockGreaterThan(0);
+    }
 
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, sync = true)
     public ProductDto getProduct(long id) {
         Product product = productRepository.findById(id).orElseThrow(() -> new NotFoundException("Product not found"));
-        return modelMapper.map(product, ProductDto.class);
+        return productMapper.toDto(product);
+    }
+
+    /**
+     * Resolves several products at once, in the order of the request. Products missing from the cache
+     * are read with a single {@code IN} query and cached; ids matching no product are reported as missing.
+     */
+    public ProductLookupResponse lookup(List<Long> ids) {
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        if (distinctIds.size() > MAX_LOOKUP_SIZE) {
+            throw new BadRequestException("At most " + MAX_LOOKUP_SIZE + " products can be looked up at once");
+        }
+
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        Map<Long, ProductDto> found = new HashMap<>();
+        List<Long> uncached = new ArrayList<>();
+        for (Long id : distinctIds) {
+            ProductDto cached = cache != null ? cache.get(id, ProductDto.class) : null;
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                uncached.add(id);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            for (Product product : productRepository.findAllById(uncached)) {
+                ProductDto dto = productMapper.toDto(product);
+                found.put(product.getId(), dto);
+                if (cache != null) {
+                    cache.putIfAbsent(product.getId(), dto);
+                }
+            }
+        }
+
+        List<ProductDto> products = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : distinctIds) {
+            ProductDto dto = found.get(id);
+            if (dto != null) {
+                products.add(dto);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ProductLookupResponse(products, missing);
     }
 
+    @Caching(
+            put = @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#id"),
+            evict = @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    )
     public ProductDto updateProduct(long id, ProductDto productDto) {
         Product product = productRepository.findById(id).orElseThrow(() -> new NotFoundException("Product not found"));
         product.setName(productDto.getName());
@@ -61,10 +179,21 @@ public class ProductService {
         product.setStock(productDto.getStock());
         product.setDescription(productDto.getDescription());
         Product updatedProduct = productRepository.save(product);
-        return modelMapper.map(updatedProduct, ProductDto.class);
+        productSearchService.index(updatedProduct);
+        productFacetService.index(updatedProduct);
+        productVersionService.productChanged(id);
+        return productMapper.toDto(updatedProduct);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
     public void deleteProduct(long id) {
         productRepository.deleteById(id);
+        productViewRepository.deleteById(id);
+        productSearchService.remove(id);
+        productFacetService.remove(id);
+        productVersionService.productDeleted(id);
     }
 }
@@ -0,0 +1,106 @@
+package org.froome.productservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.froome.productservice.config.CacheConfig;
+import org.froome.productservice.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of the catalog and of each product, from which the product endpoints derive their ETags.
+ * <p>
+ * Every write through {@link ProductService} bumps the catalog and the product it touched. Products are also
+ * changed by the other instances and, for their stock, directly in the database by the order service, which
+ * the service only learns about by polling: every product whose {@code updated_at} moved since the last one
+ * seen gets a new version, whatever column changed, leaves the cache and is published in a
+ * {@link ProductsChangedEvent}. Until the next poll, a product changed that way can still be answered with a
+ * 304 or a cached body, so ETags are only as fresh as {@code products.count.refresh-millis}.
+ * The ETags include the startup time, so that versions restarting at zero never reuse a tag.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductVersionService {
+
+    private final ProductRepository productRepository;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * How far before the previous poll rows are read again, for the transactions that committed after it
+     * with an earlier {@code updated_at}.
+     */
+    @Value("${products.changes.overlap:60s}")
+    private Duration overlap;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Map<Long, Long> productVersions = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> updatedAts = new HashMap<>();
+    private LocalDateTime checkedAt;
+
+    public String catalogETag() {
+        return "\"c-" + epoch + "-" + catalogVersion.get() + "\"";
+    }
+
+    public String productETag(long id) {
+        return "\"p-" + epoch + "-" + productVersions.getOrDefault(id, 0L) + "\"";
+    }
+
+    public void productChanged(long id) {
+        productVersions.merge(id, 1L, Long::sum);
+        catalogVersion.incrementAndGet();
+    }
+
+    public void catalogChanged() {
+        catalogVersion.incrementAndGet();
+    }
+
+    public synchronized void productDeleted(long id) {
+        productVersions.remove(id);
+        updatedAts.remove(id);
+        catalogVersion.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${products.count.refresh-millis:30000}")
+    public synchronized void detectExternalChanges() {
+        LocalDateTime now = productRepository.databaseTime();
+        LocalDateTime since = checkedAt != null ? checkedAt.minus(overlap) : LocalDateTime.of(1970, 1, 1, 0, 0);
+        List<Long> changed = new ArrayList<>();
+        for (ProductRepository.ProductUpdate product : productRepository.findUpdatedSince(since)) {
+            LocalDateTime previous = updatedAts.put(product.getId(), product.getUpdatedAt());
+            if (checkedAt != null && !Objects.equals(previous, product.getUpdatedAt())) {
+                changed.add(product.getId());
+            }
+        }
+        checkedAt = now;
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        changed.forEach(id -> productVersions.merge(id, 1L, Long::sum));
+        catalogVersion.incrementAndGet();
+        Cache products = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (products != null) {
+            changed.forEach(products::evict);
+        }
+        Cache pages = cacheManager.getCache(CacheConfig.PRODUCT_PAGES);
+        if (pages != null) {
+            pages.clear();
+        }
+        eventPublisher.publishEvent(new ProductsChangedEvent(changed));
+    }
+}
@@ -0,0 +1,66 @@
+package org.froome.productservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.froome.productservice.config.CacheConfig;
+import org.froome.productservice.mapper.ProductMapper;
+import org.froome.productservice.model.dto.ProductDto;
+import org.froome.productservice.repository.ProductRepository;
+import org.froome.productservice.repository.ProductViewRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts product views in memory and adds them to {@code product_views} in the background,
+ * so that the product cache can be warmed at startup with the most viewed products.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductViewService {
+
+    private final ProductViewRepository productViewRepository;
+    private final ProductRepository productRepository;
+    private final CacheManager cacheManager;
+    private final ProductMapper productMapper;
+
+    @Value("${products.cache.warm-up-size:500}")
+    private int warmUpSize;
+
+    private final Map<Long, LongAdder> pendingViews = new ConcurrentHashMap<>();
+
+    public void recordView(long id) {
+        pendingViews.computeIfAbsent(id, key -> new LongAdder()).increment();
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${products.views.flush-millis:60000}")
+    public void flushViews() {
+        for (Long id : pendingViews.keySet()) {
+            LongAdder views = pendingViews.remove(id);
+            if (views != null && views.sum() > 0) {
+                productViewRepository.addViews(id, views.sum());
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<Long> ids = productViewRepository.findMostViewedIds(warmUpSize);
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (ids.isEmpty() || cache == null) {
+            return;
+        }
+        productRepository.findAllById(ids)
+                .forEach(product -> cache.putIfAbsent(product.getId(), productMapper.toDto(product)));
+    }
+}
@@ -0,0 +1,10 @@
+package org.froome.productservice.service;
+
+import java.util.List;
+
+/**
+ * Products whose row was changed in the database by another service, published by {@link ProductVersionService}
+ * for the in-memory indexes to read them again.
+ */
+public record ProductsChangedEvent(List<Long> ids) {
+}
@@ -4,20 +4,22 @@ import org.springframework.security.authentication.AbstractAuthenticationToken;
 
 public class BearerTokenAuthentication extends AbstractAuthenticationToken {
     private final String token;
+    private final UserPrincipal principal;
 
-    public BearerTokenAuthentication(String token) {
+    public BearerTokenAuthentication(String token, UserPrincipal principal) {
         super(null);
         this.token = token;
+        this.principal = principal;
         setAuthenticated(true);
     }
 
     @Override
-    public Object getCredentials() {
+    public String getCredentials() {
         return token;
     }
 
     @Override
-    public Object getPrincipal() {
-        return token;
+    public UserPrincipal getPrincipal() {
+        return principal;
     }
 }
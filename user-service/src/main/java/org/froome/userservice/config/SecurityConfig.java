@@ -5,17 +5,23 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.froome.userservice.service.JwtService;
+import org.froome.userservice.service.TokenRevocationService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -23,11 +29,40 @@ import java.io.IOException;
 
 @Configuration
 @EnableWebSecurity
+@RequiredArgsConstructor
+@Slf4j
 public class SecurityConfig {
 
+    private final GatewayPrincipalVerifier gatewayPrincipalVerifier;
+    private final JwtService jwtService;
+    private final TokenRevocationService tokenRevocationService;
+
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${password.hashing.target-millis:250}") long targetMillis,
+                                           @Value("${password.hashing.min-strength:10}") int minStrength,
+                                           @Value("${password.hashing.max-strength:14}") int maxStrength) {
+        int strength = calibrateStrength(targetMillis, minStrength, maxStrength);
+        log.info("Using BCrypt strength {} for a target of {} ms per hash", strength, targetMillis);
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    /**
+     * Picks the highest BCrypt strength whose hash stays within the target on this host. Each extra
+     * round doubles the cost, so a single timed hash at the minimum strength is enough to extrapolate.
+     */
+    private static int calibrateStrength(long targetMillis, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(minStrength);
+        encoder.encode("calibration");
+        long start = System.nanoTime();
+        encoder.encode("calibration");
+        double elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000.0);
+
+        int strength = minStrength;
+        while (strength < maxStrength && elapsedMillis * 2 <= targetMillis) {
+            elapsedMillis *= 2;
+            strength++;
+        }
+        return strength;
     }
 
     @Bean
@@ -38,14 +73,20 @@ public class SecurityConfig {
                         .requestMatchers("/api/users/register", "/api/users/login", "/api/users/logout").permitAll()
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(new BearerTokenFilter(), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new BearerTokenFilter(gatewayPrincipalVerifier, jwtService, tokenRevocationService), UsernamePasswordAuthenticationFilter.class)
+                .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 
         return http.build();
     }
 
+    @RequiredArgsConstructor
     public static class BearerTokenFilter extends OncePerRequestFilter {
+        private final GatewayPrincipalVerifier gatewayPrincipalVerifier;
+        private final JwtService jwtService;
+        private final TokenRevocationService tokenRevocationService;
+
         @Override
         protected void doFilterInternal(HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
                 throws ServletException, IOException {
@@ -55,11 +96,25 @@ public class SecurityConfig {
 
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String token = authHeader.substring(7);
-                    Authentication auth = new BearerTokenAuthentication(token);
-                    SecurityContextHolder.getContext().setAuthentication(auth);
+                    UserPrincipal principal = authenticate(token, request);
+                    if (principal != null) {
+                        SecurityContextHolder.getContext().setAuthentication(new BearerTokenAuthentication(token, principal));
+                    }
                 }
             }
             filterChain.doFilter(request, response);
         }
+
+        private UserPrincipal authenticate(String token, HttpServletRequest request) {
+            UserPrincipal principal = gatewayPrincipalVerifier.verify(token, request);
+            if (principal == null) {
+                try {
+                    principal = UserPrincipal.fromClaims(jwtService.extractAllClaims(token));
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }
+            return tokenRevocationService.isRevoked(token, principal) ? null : principal;
+        }
     }
 }
@@ -1,5 +1,7 @@
 package org.froome.userservice.controller;
 
+import org.froome.userservice.config.BearerTokenAuthentication;
+import org.froome.userservice.config.UserPrincipal;
 import org.froome.userservice.exception.ForbiddenException;
 import org.froome.userservice.model.dto.ExceptionDto;
 import org.froome.userservice.model.dto.UserDto;
@@ -17,7 +19,6 @@ import jakarta.validation.constraints.Email;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
@@ -44,9 +45,8 @@ public class UserController {
                     @ApiResponse(responseCode = "409", description = "Conflict", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             }
     )
-    public ResponseEntity<UserDto> register(@Valid @RequestBody UserDto userDto, Authentication authentication) {
-        String token = authentication != null ? authentication.getPrincipal().toString() : null;
-        if (userService.countUsers() > 0 && userDto.isAdmin() && (token == null || authService.isNotAdmin(token))) {
+    public ResponseEntity<UserDto> register(@Valid @RequestBody UserDto userDto, UserPrincipal principal) {
+        if (userDto.isAdmin() && (principal == null || authService.isNotAdmin(principal)) && userService.hasUsers()) {
             throw new ForbiddenException("Only an admin can create another admin user.");
         }
 
@@ -73,6 +73,22 @@ public class UserController {
         return new ResponseEntity<>(token, HttpStatus.OK);
     }
 
+    @PostMapping("/logout")
+    @Operation(
+            summary = "Logout a user",
+            description = "Revokes the bearer token of the request. Calling it without a valid token has no effect.",
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "User logged out")
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<Void> logout(BearerTokenAuthentication authentication) {
+        if (authentication != null) {
+            userService.logout(authentication.getCredentials(), authentication.getPrincipal());
+        }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     @GetMapping
     @Operation(
             summary = "Get all users",
@@ -84,9 +100,8 @@ public class UserController {
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<List<UserDto>> getUsers(Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdmin(token)) {
+    public ResponseEntity<List<UserDto>> getUsers(UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
             throw new ForbiddenException("You are not allowed to access this resource.");
         } else {
             List<UserDto> users = userService.getUsers();
@@ -104,9 +119,8 @@ public class UserController {
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<UserDto> getMe(Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        UserDto user = userService.getUser(authService.getUserIdFromToken(token));
+    public ResponseEntity<UserDto> getMe(UserPrincipal principal) {
+        UserDto user = userService.getUser(principal.getId());
         return new ResponseEntity<>(user, HttpStatus.OK);
     }
 
@@ -126,9 +140,8 @@ public class UserController {
     public ResponseEntity<UserDto> getUser(
             @Parameter(description = "ID of the user to be retrieved", required = true)
             @PathVariable long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdminOrSameUser(token, id)) {
+            UserPrincipal principal) {
+        if (authService.isNotAdminOrSameUser(principal, id)) {
             throw new ForbiddenException("You are not allowed to access this resource.");
         } else {
             UserDto user = userService.getUser(id);
@@ -145,7 +158,8 @@ public class UserController {
                     @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
-                    @ApiResponse(responseCode = "404", description = "User not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+                    @ApiResponse(responseCode = "404", description = "User not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "409", description = "Conflict", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
@@ -153,9 +167,8 @@ public class UserController {
             @Parameter(description = "ID of the user to be updated", required = true)
             @PathVariable long id,
             @Valid @RequestBody UserDto userDto,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdminOrSameUser(token, id)) {
+            UserPrincipal principal) {
+        if (authService.isNotAdminOrSameUser(principal, id)) {
             throw new ForbiddenException("You are not allowed to access this resource.");
         } else {
             UserDto updatedUser = userService.updateUser(id, userDto);
@@ -172,21 +185,43 @@ public class UserController {
                     @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
                     @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
-                    @ApiResponse(responseCode = "404", description = "User not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+                    @ApiResponse(responseCode = "404", description = "User not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "409", description = "Conflict", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
             },
             security = @SecurityRequirement(name = "bearerAuth")
     )
     public ResponseEntity<Void> deleteUser(
             @Parameter(description = "ID of the user to be deleted", required = true)
             @PathVariable long id,
-            Authentication authentication) {
-        String token = authentication.getPrincipal().toString();
-        if (authService.isNotAdminOrSameUser(token, id)) {
+            UserPrincipal principal) {
+        if (authService.isNotAdminOrSameUser(principal, id)) {
             throw new ForbiddenException("You are not allowed to access this resource.");
         } else {
             userService.deleteUser(id);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
     }
-}
 
+    @PostMapping("/{id}/revoke-tokens")
+    @Operation(
+            summary = "Revoke the tokens of a user",
+            description = "Only an admin can revoke every token issued to a user so far.",
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "Tokens revoked"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema(implementation = ExceptionDto.class))),
+                    @ApiResponse(responseCode = "404", description = "User not found", content = @Content(schema = @Schema(implementation = ExceptionDto.class)))
+            },
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<Void> revokeTokens(
+            @Parameter(description = "ID of the user whose tokens are revoked", required = true)
+            @PathVariable long id,
+            UserPrincipal principal) {
+        if (authService.isNotAdmin(principal)) {
+            throw new ForbiddenException("You are not allowed to access this resource.");
+        }
+        userService.revokeTokens(id);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
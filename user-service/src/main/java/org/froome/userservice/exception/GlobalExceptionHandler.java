@@ -5,6 +5,7 @@ import org.froome.userservice.model.dto.ExceptionDto;
 import jakarta.persistence.EntityExistsException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
@@ -21,6 +22,7 @@ public class GlobalExceptionHandler {
     private static final String CONFLICT = "The request could not be completed due to a conflict with the current state of the target resource.";
     private static final String UNAUTHORIZED = "The request has not been applied because it lacks valid authentication credentials for the target resource.";
     private static final String FORBIDDEN = "The server understood the request, but is refusing to fulfill it.";
+    private static final String SERVICE_UNAVAILABLE = "The server is temporarily unable to handle the request, please retry later.";
     
 
     @ExceptionHandler(DataIntegrityViolationException.class)
@@ -108,6 +110,18 @@ public class GlobalExceptionHandler {
         );
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ExceptionDto> handleServiceUnavailableException(ServiceUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ExceptionDto(
+                        SERVICE_UNAVAILABLE,
+                        e.getMessage(),
+                        HttpStatus.SERVICE_UNAVAILABLE.toString(),
+                        HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(),
+                        TIMESTAMP));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ExceptionDto> handleException(Exception e) {
         return new ResponseEntity<>(new ExceptionDto(
@@ -0,0 +1,16 @@
+package org.froome.userservice.mapper;
+
+import org.froome.userservice.model.User;
+import org.froome.userservice.model.dto.UserDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+/**
+ * User conversions, implemented at compile time by MapStruct. The password hash never leaves the entity.
+ */
+@Mapper(componentModel = "spring")
+public interface UserMapper {
+
+    @Mapping(target = "password", ignore = true)
+    UserDto toDto(User user);
+}
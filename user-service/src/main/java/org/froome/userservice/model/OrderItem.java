@@ -23,7 +23,7 @@ public class OrderItem {
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
-    @Column(name = "price", nullable = false)
-    private float price;
+    @Column(name = "price", nullable = false, precision = 10, scale = 2)
+    private Money price;
 }
 
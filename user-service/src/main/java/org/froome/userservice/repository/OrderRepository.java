@@ -2,6 +2,9 @@ package org.froome.userservice.repository;
 
 import org.froome.userservice.model.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +12,11 @@ import java.util.List;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUserId(Long userId);
+
+    /**
+     * Deletes the summaries of the orders of the user, read by the order lists of the order service.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM order_summaries WHERE user_id = :userId", nativeQuery = true)
+    int deleteSummariesByUserId(@Param("userId") Long userId);
 }
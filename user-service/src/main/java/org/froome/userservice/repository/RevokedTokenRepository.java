@@ -0,0 +1,33 @@
+package org.froome.userservice.repository;
+
+import org.froome.userservice.model.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    boolean existsByTokenDigest(String tokenDigest);
+
+    List<RevokedToken> findByExpiresAtAfterOrderByIdAsc(Instant now);
+
+    /**
+     * Revocations created since the given time, read through the {@code created_at} index.
+     */
+    List<RevokedToken> findByCreatedAtGreaterThanEqual(LocalDateTime since);
+
+    @Query(value = "SELECT NOW(6)", nativeQuery = true)
+    LocalDateTime databaseTime();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -2,11 +2,18 @@ package org.froome.userservice.repository;
 
 import org.froome.userservice.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByEmail(String email);
-    boolean existsByEmail(String email);
-    boolean existsByUsername(String username);
+
+    /**
+     * Locks the admins, so that removing one waits for any other removal in progress.
+     */
+    @Query(value = "SELECT id FROM users WHERE is_admin = true ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> lockAdminIds();
 }
@@ -1,41 +1,16 @@
 package org.froome.userservice.service;
 
-import lombok.RequiredArgsConstructor;
-import org.froome.userservice.exception.UnauthorizedException;
+import org.froome.userservice.config.UserPrincipal;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-
 @Service
-@RequiredArgsConstructor
 public class AuthService {
-    private final JwtService jwtService;
-
-    public boolean isNotAdmin(String token) {
-        if (jwtService.validateToken(token)) {
-            Map<String, Object> claims = jwtService.extractAllClaims(token);
-            return !((boolean) claims.get("isAdmin"));
-        } else {
-            throw new UnauthorizedException("The provided token is not valid.");
-        }
-    }
 
-    public boolean isNotAdminOrSameUser(String token, long id) {
-        if (jwtService.validateToken(token)) {
-            Map<String, Object> claims = jwtService.extractAllClaims(token);
-            long userId = Long.parseLong(claims.get("id").toString());
-            return userId != id && !((boolean) claims.get("isAdmin"));
-        } else {
-            throw new UnauthorizedException("The provided token is not valid.");
-        }
+    public boolean isNotAdmin(UserPrincipal principal) {
+        return !principal.isAdmin();
     }
 
-    public long getUserIdFromToken(String token) {
-        if (jwtService.validateToken(token)) {
-            Map<String, Object> claims = jwtService.extractAllClaims(token);
-            return Long.parseLong(claims.get("id").toString());
-        } else {
-            throw new UnauthorizedException("The provided token is not valid.");
-        }
+    public boolean isNotAdminOrSameUser(UserPrincipal principal, long id) {
+        return principal.getId() != id && !principal.isAdmin();
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import org.froome.userservice.repository.OrderItemRepository;
 import org.froome.userservice.repository.OrderRepository;
 import org.froome.userservice.repository.PaymentRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -18,11 +19,13 @@ public class OrderService {
     private final OrderItemRepository orderItemRepository;
     private final PaymentRepository paymentRepository;
 
+    @Transactional
     public void deleteOrdersByUserId(Long userId) {
         List<Order> orders = orderRepository.findByUserId(userId);
         orders.forEach(order -> deleteOrderItemsByOrderId(order.getId()));
         orders.forEach(order -> deletePaymentsByOrderId(order.getId()));
         orderRepository.deleteAll(orders);
+        orderRepository.deleteSummariesByUserId(userId);
     }
 
     private void deleteOrderItemsByOrderId(Long orderId) {
@@ -0,0 +1,178 @@
+package org.froome.userservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.froome.userservice.config.UserPrincipal;
+import org.froome.userservice.model.RevokedToken;
+import org.froome.userservice.repository.RevokedTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers whether a token has been revoked without a database round trip for the common case.
+ * Revoked token digests are kept in a Bloom filter sized to the number of live revocations, and
+ * only a positive answer is confirmed against the {@code revoked_tokens} table. The filter is
+ * extended every few seconds with the rows created since the last refresh, and rebuilt periodically
+ * so that expired revocations stop taking up space.
+ * <p>
+ * Ids and creation times are assigned on insert, not on commit, so a row can become visible after
+ * later ones were loaded. Each refresh reads again {@code jwt.revocation.overlap} before the previous
+ * one and skips the rows it already loaded, so that a revocation committed late is still picked up.
+ */
+@Service
+@RequiredArgsConstructor
+public class TokenRevocationService {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${jwt.revocation.min-capacity:1024}")
+    private int minCapacity;
+
+    @Value("${jwt.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${jwt.expiration}")
+    private long expiration;
+
+    @Value("${jwt.revocation.overlap:60s}")
+    private Duration overlap;
+
+    private volatile BloomFilter revokedDigests;
+    private volatile Map<Long, Instant> userCutoffs = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> recentlyLoaded = new HashMap<>();
+    private LocalDateTime checkedAt;
+    private int loadedDigests;
+
+    @PostConstruct
+    void init() {
+        rebuild();
+        Gauge.builder("jwt.revocation.filter.bytes", this, service -> service.revokedDigests.sizeInBytes()).register(meterRegistry);
+        Gauge.builder("jwt.revocation.filter.entries", this, service -> service.loadedDigests).register(meterRegistry);
+    }
+
+    public boolean isRevoked(String token, UserPrincipal principal) {
+        Instant cutoff = userCutoffs.get(principal.getId());
+        if (cutoff != null && principal.getExpiresAt() != null && principal.getExpiresAt().isBefore(cutoff)) {
+            return true;
+        }
+
+        String digest = JwtService.digest(token);
+        if (!revokedDigests.mightContain(digest)) {
+            return false;
+        }
+        boolean revoked = revokedTokenRepository.existsByTokenDigest(digest);
+        if (!revoked) {
+            meterRegistry.counter("jwt.revocation.false-positives").increment();
+        }
+        return revoked;
+    }
+
+    public void revokeToken(String token, UserPrincipal principal) {
+        String digest = JwtService.digest(token);
+        if (revokedTokenRepository.existsByTokenDigest(digest)) {
+            return;
+        }
+        RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setTokenDigest(digest);
+        revokedToken.setUserId(principal.getId());
+        revokedToken.setExpiresAt(principal.getExpiresAt() != null ? principal.getExpiresAt() : Instant.now().plusMillis(expiration));
+        revokedToken = revokedTokenRepository.save(revokedToken);
+        synchronized (this) {
+            load(revokedToken);
+        }
+    }
+
+    /**
+     * Revokes every token issued to the user so far. Tokens all live for {@code jwt.expiration}, so the ones
+     * issued before now are exactly those expiring before now plus that lifetime. The cutoff is truncated to
+     * the second, the precision of the {@code exp} claim, so that a token issued just after the revocation is
+     * never taken for an older one; a token issued earlier within the same second is kept.
+     */
+    public void revokeUserTokens(long userId) {
+        RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setUserId(userId);
+        revokedToken.setExpiresAt(Instant.now().plusMillis(expiration).truncatedTo(ChronoUnit.SECONDS));
+        revokedToken = revokedTokenRepository.save(revokedToken);
+        synchronized (this) {
+            load(revokedToken);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-millis:5000}", initialDelayString = "${jwt.revocation.refresh-millis:5000}")
+    public synchronized void refresh() {
+        LocalDateTime now = revokedTokenRepository.databaseTime();
+        LocalDateTime since = checkedAt.minus(overlap);
+        List<RevokedToken> added = revokedTokenRepository.findByCreatedAtGreaterThanEqual(since).stream()
+                .filter(revokedToken -> !recentlyLoaded.containsKey(revokedToken.getId()))
+                .toList();
+        long digests = added.stream().filter(revokedToken -> revokedToken.getTokenDigest() != null).count();
+        if (loadedDigests + digests > revokedDigests.capacity()) {
+            rebuild();
+            return;
+        }
+        added.forEach(this::load);
+        recentlyLoaded.values().removeIf(createdAt -> createdAt.isBefore(since));
+        checkedAt = now;
+    }
+
+    /**
+     * Reloads the live revocations into a filter sized for them, with room to grow before the next rebuild.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-millis:3600000}", initialDelayString = "${jwt.revocation.rebuild-millis:3600000}")
+    public synchronized void rebuild() {
+        LocalDateTime now = revokedTokenRepository.databaseTime();
+        List<RevokedToken> live = revokedTokenRepository.findByExpiresAtAfterOrderByIdAsc(Instant.now());
+        BloomFilter filter = new BloomFilter(Math.max(minCapacity, live.size() * 2), falsePositiveRate);
+        Map<Long, Instant> cutoffs = new ConcurrentHashMap<>();
+        int digests = 0;
+        for (RevokedToken revokedToken : live) {
+            if (revokedToken.getTokenDigest() != null) {
+                filter.put(revokedToken.getTokenDigest());
+                digests++;
+            } else {
+                cutoffs.merge(revokedToken.getUserId(), revokedToken.getExpiresAt(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+        recentlyLoaded.clear();
+        LocalDateTime recent = now.minus(overlap);
+        for (RevokedToken revokedToken : live) {
+            if (!revokedToken.getCreatedAt().isBefore(recent)) {
+                recentlyLoaded.put(revokedToken.getId(), revokedToken.getCreatedAt());
+            }
+        }
+        revokedDigests = filter;
+        userCutoffs = cutoffs;
+        loadedDigests = digests;
+        checkedAt = now;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-millis:3600000}")
+    public void purgeExpired() {
+        revokedTokenRepository.deleteExpired(Instant.now());
+    }
+
+    private void load(RevokedToken revokedToken) {
+        if (revokedToken.getTokenDigest() != null) {
+            revokedDigests.put(revokedToken.getTokenDigest());
+            loadedDigests++;
+        } else {
+            userCutoffs.merge(revokedToken.getUserId(), revokedToken.getExpiresAt(), (a, b) -> a.isAfter(b) ? a : b);
+        }
+        // A row saved by this instance has no creation time until it is read back.
+        recentlyLoaded.put(revokedToken.getId(),
+                revokedToken.getCreatedAt() != null ? revokedToken.getCreatedAt() : LocalDateTime.now());
+    }
+}
@@ -1,93 +1,137 @@
 package org.froome.userservice.service;
 
+import org.froome.userservice.config.UserPrincipal;
 import org.froome.userservice.exception.ConflictException;
 import org.froome.userservice.exception.NotFoundException;
 import org.froome.userservice.exception.UnauthorizedException;
+import org.froome.userservice.mapper.UserMapper;
 import org.froome.userservice.model.User;
 import org.froome.userservice.model.dto.UserDto;
 import org.froome.userservice.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
     private final OrderService orderService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserMapper userMapper;
+    private final AtomicBoolean hasUsers = new AtomicBoolean();
 
     public UserDto register(UserDto userDto) {
-        if (userRepository.existsByEmail(userDto.getEmail())) {
-            throw new ConflictException("Email already in use");
-        }
-
-        if (userRepository.existsByUsername(userDto.getUsername())) {
-            throw new ConflictException("Username already in use");
-        }
-
         User user = new User();
         user.setUsername(userDto.getUsername());
-        user.setPassword(passwordEncoder.encode(userDto.getPassword()));
+        user.setPassword(passwordHashingService.encode(userDto.getPassword()));
         user.setEmail(userDto.getEmail());
         user.setAddress(userDto.getAddress());
         user.setAdmin(userDto.isAdmin());
-        user = userRepository.save(user);
-        return toDto(user);
+        try {
+            user = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw toConflict(e);
+        }
+        hasUsers.set(true);
+        return userMapper.toDto(user);
     }
 
     public String login(String email, String password) {
         User user = userRepository.findByEmail(email);
-        if (user != null && passwordEncoder.matches(password, user.getPassword())) {
+        if (user != null && passwordHashingService.matches(password, user.getPassword())) {
+            if (passwordHashingService.upgradeEncoding(user.getPassword())) {
+                user.setPassword(passwordHashingService.encode(password));
+                userRepository.save(user);
+            }
             return jwtService.generateToken(user.toMap());
         }
         throw new UnauthorizedException("Invalid login credentials");
     }
 
+    public void logout(String token, UserPrincipal principal) {
+        tokenRevocationService.revokeToken(token, principal);
+    }
+
+    public void revokeTokens(long id) {
+        if (!userRepository.existsById(id)) {
+            throw new NotFoundException("User not found");
+        }
+        tokenRevocationService.revokeUserTokens(id);
+    }
+
     public List<UserDto> getUsers() {
         List<UserDto> users = new ArrayList<>();
-        userRepository.findAll().forEach(user -> users.add(toDto(user)));
+        userRepository.findAll().forEach(user -> users.add(userMapper.toDto(user)));
         return users;
     }
 
     public UserDto getUser(Long id) {
         User user = userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found"));
-        return toDto(user);
+        return userMapper.toDto(user);
     }
 
+    @Transactional
     public UserDto updateUser(Long id, UserDto userDto) {
+        if (!userDto.isAdmin()) {
+            keepAnAdmin(id);
+        }
         User user = userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found"));
         user.setUsername(userDto.getUsername());
         user.setEmail(userDto.getEmail());
         user.setAddress(userDto.getAddress());
         user.setAdmin(userDto.isAdmin());
         user = userRepository.save(user);
-        return toDto(user);
+        return userMapper.toDto(user);
     }
 
+    @Transactional
     public void deleteUser(Long id) {
+        keepAnAdmin(id);
         orderService.deleteOrdersByUserId(id);
         User user = userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found"));
         userRepository.delete(user);
     }
 
-    private UserDto toDto(User user) {
-        UserDto dto = new UserDto();
-        dto.setId(user.getId());
-        dto.setUsername(user.getUsername());
-        dto.setEmail(user.getEmail());
-        dto.setAddress(user.getAddress());
-        dto.setAdmin(user.isAdmin());
-        return dto;
+    /**
+     * Whether the first user has been registered, who may make itself an admin. Only checked against the
+     * table until it has: from then on only admins create admins, and the last one can be neither deleted
+     * nor demoted.
+     */
+    public boolean hasUsers() {
+        if (!hasUsers.get() && userRepository.count() > 0) {
+            hasUsers.set(true);
+        }
+        return hasUsers.get();
     }
 
-    public int countUsers() {
-        return (int) userRepository.count();
+    /**
+     * Refuses to remove the admin rights of the user when no other admin would be left.
+     */
+    private void keepAnAdmin(Long id) {
+        List<Long> admins = userRepository.lockAdminIds();
+        if (admins.size() == 1 && admins.contains(id)) {
+            throw new ConflictException("The last admin cannot be removed");
+        }
+    }
+
+    private static ConflictException toConflict(DataIntegrityViolationException e) {
+        String message = String.valueOf(e.getMostSpecificCause().getMessage());
+        if (message.contains(User.EMAIL_CONSTRAINT)) {
+            return new ConflictException("Email already in use");
+        }
+        if (message.contains(User.USERNAME_CONSTRAINT)) {
+            return new ConflictException("Username already in use");
+        }
+        return new ConflictException("Email or username already in use");
     }
 }
 